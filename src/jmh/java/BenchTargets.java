@@ -0,0 +1,114 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import maze.bench.Targets;
+
+/**
+ * BenchTargets sets up the work the benchmarks in maze.bench measure, see Targets.
+ */
+public class BenchTargets implements Targets {
+    @Override
+    public Runnable move(String kind) {
+        int n = 15;
+        State state;
+        switch (kind) {
+            case "valid":
+                state = new State(null, "p0", n, 0, new ShardMap(n, 1), 0, new Position(0, 0), 0);
+                break;
+            case "blocked":
+                state = new State(null, "p0", n, 0, new ShardMap(n, 1), 0, new Position(0, 0), 0);
+                return () -> {
+                    state.move(Move.Left, "p0");
+                    state.takeDelta();
+                };
+            case "treasure":
+                state = new State(null, "p0", n, n * n - 1, new ShardMap(n, 1), 0, new Position(0, 0), 0);
+                break;
+            default:
+                throw new IllegalArgumentException("no move benchmark " + kind);
+        }
+        // back and forth between (0, 0) and (1, 0)
+        boolean[] right = {true};
+        return () -> {
+            state.move(right[0] ? Move.Right : Move.Left, "p0");
+            right[0] = !right[0];
+            state.takeDelta();
+        };
+    }
+
+    @Override
+    public Supplier<Object> randomPosition(double fill) {
+        int n = 30;
+        State state = new State(null, "p0", n, 0);
+        int taken = (int) (fill * n * n);
+        for (int i = 1; i < taken && i < n * n - 1; i++) {
+            state.addPlayer(null, "p" + i);
+        }
+        state.takeDelta();
+        return state::randomPosition;
+    }
+
+    @Override
+    public Runnable joinAndLeave(int players) {
+        State state = game(players);
+        return () -> {
+            state.addPlayer(null, "joiner");
+            state.removePlayer("joiner");
+            state.takeDelta();
+        };
+    }
+
+    @Override
+    public Supplier<byte[]> serialize(int players) {
+        State state = game(players);
+        return () -> encode(state);
+    }
+
+    @Override
+    public byte[] encoded(int players) {
+        return encode(game(players));
+    }
+
+    @Override
+    public Function<byte[], Object> deserialize() {
+        return bytes -> {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return in.readObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    // game returns a game of `players` in a maze just big enough to hold them at most half full
+    private static State game(int players) {
+        int n = 10;
+        while (n * n < players * 2) {
+            n += 5;
+        }
+        State state = new State(null, "p0", n, 10);
+        for (int i = 1; i < players; i++) {
+            state.addPlayer(null, "p" + i);
+        }
+        state.takeDelta();
+        return state;
+    }
+
+    private static byte[] encode(State state) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(state);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
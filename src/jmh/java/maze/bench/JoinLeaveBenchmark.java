@@ -0,0 +1,41 @@
+package maze.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JoinLeaveBenchmark measures State.addPlayer followed by State.removePlayer in a game of `players`.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JoinLeaveBenchmark {
+    @Param({"10", "100"})
+    public int players;
+
+    private Runnable joinAndLeave;
+
+    @Setup
+    public void setup() {
+        joinAndLeave = Targets.get().joinAndLeave(players);
+    }
+
+    @Benchmark
+    public void joinAndLeave() {
+        joinAndLeave.run();
+    }
+}
@@ -0,0 +1,43 @@
+package maze.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RandomPositionBenchmark measures picking a free cell, as done for every joining player and
+ * every treasure collected, on a maze filled up to `fill`.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RandomPositionBenchmark {
+    @Param({"0", "0.5", "0.9", "0.99"})
+    public double fill;
+
+    private Supplier<Object> pick;
+
+    @Setup
+    public void setup() {
+        pick = Targets.get().randomPosition(fill);
+    }
+
+    @Benchmark
+    public Object randomPosition() {
+        return pick.get();
+    }
+}
@@ -0,0 +1,53 @@
+package maze.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SerializationBenchmark measures encoding and decoding a whole State of `players`,
+ * as sent to a new backup or a refreshing player.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+    @Param({"10", "100", "1000"})
+    public int players;
+
+    private Supplier<byte[]> serialize;
+    private Function<byte[], Object> deserialize;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        serialize = Targets.get().serialize(players);
+        deserialize = Targets.get().deserialize();
+        encoded = Targets.get().encoded(players);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serialize.get();
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return deserialize.apply(encoded);
+    }
+}
@@ -0,0 +1,47 @@
+package maze.bench;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Targets is the work the benchmarks measure, set up by BenchTargets.
+ *
+ * JMH does not take benchmarks in the default package, and classes of the default package cannot be
+ * named from any other. So BenchTargets, in the default package with the rest of the game, implements
+ * this interface and the benchmarks look it up once, by name.
+ */
+public interface Targets {
+    /**
+     * move returns a move of one player, followed by taking the delta as the primary does.
+     * `valid` moves on an empty row, `blocked` runs into the edge of the maze,
+     * `treasure` moves on a maze full of treasures, so that every move collects one.
+     */
+    Runnable move(String kind);
+
+    /**
+     * randomPosition returns a pick of a random free cell in a 30 x 30 maze with
+     * `fill` of its cells taken by players.
+     */
+    Supplier<Object> randomPosition(double fill);
+
+    // joinAndLeave returns a player joining and leaving again a game of `players`
+    Runnable joinAndLeave(int players);
+
+    // serialize returns the encoding of a game of `players`, as the transports send it
+    Supplier<byte[]> serialize(int players);
+
+    // encoded returns one encoding of a game of `players`, for deserialize
+    byte[] encoded(int players);
+
+    // deserialize returns the decoding of an encoded game
+    Function<byte[], Object> deserialize();
+
+    // get returns BenchTargets
+    static Targets get() {
+        try {
+            return (Targets) Class.forName("BenchTargets").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cannot set up the benchmarks", e);
+        }
+    }
+}
@@ -1,19 +1,73 @@
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.Vector;
 
 /**
  * POJO to hold bootstrap items
  */
-public class Bootstrap implements Serializable {
+public class Bootstrap implements Externalizable {
+    private static final long serialVersionUID = Wire.FORMAT;
+
     public Vector<Player> players;
     public int N;
     public int K;
     public TrackerInfo trackerInfo;
+    // how the maze is split, and the shard `players` belong to
+    public ShardMap shards;
+    public int shard;
+    // the tracker's membership epoch of `shard` the players are from
+    public long epoch;
+    // on the tracker, where the encoded players come from
+    private Roster roster;
+
+    // required by Externalizable
+    public Bootstrap() {}
 
-    public Bootstrap(Vector<Player> players, int N, int K, TrackerInfo trackerInfo) {
-        this.players = players;
+    public Bootstrap(Roster roster, int N, int K, TrackerInfo trackerInfo, ShardMap shards, int shard) {
+        this.roster = roster;
+        this.players = roster.players;
+        this.epoch = roster.epoch;
         this.N = N;
         this.K = K;
         this.trackerInfo = trackerInfo;
+        this.shards = shards;
+        this.shard = shard;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        Wire.writeHeader(out);
+        Wire.writeVarint(out, N);
+        Wire.writeVarint(out, K);
+        Wire.writeVarint(out, shards.perSide);
+        Wire.writeVarint(out, shard);
+        out.writeLong(epoch);
+        out.writeBoolean(trackerInfo != null);
+        if (trackerInfo != null) {
+            trackerInfo.writeExternal(out);
+        }
+        // encoded once per epoch, however many players bootstrap from it
+        byte[] encoded = roster != null ? roster.encoded() : Roster.encode(players);
+        Wire.writeVarint(out, encoded.length);
+        out.write(encoded);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        Wire.readHeader(in, "Bootstrap");
+        N = Wire.readVarint(in);
+        K = Wire.readVarint(in);
+        shards = new ShardMap(N, Wire.readVarint(in));
+        shard = Wire.readVarint(in);
+        epoch = in.readLong();
+        if (in.readBoolean()) {
+            trackerInfo = new TrackerInfo();
+            trackerInfo.readExternal(in);
+        }
+        byte[] encoded = new byte[Wire.readVarint(in)];
+        in.readFully(encoded);
+        players = Roster.decode(encoded);
     }
 }
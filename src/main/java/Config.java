@@ -0,0 +1,100 @@
+/**
+ * Config holds the optional tuning knobs of the game.
+ * They are read once from system properties, e.g. `java -Dmaze.replication=full Game 127.0.0.1 2001 ab`,
+ * so that the command line used by StressTest stays unchanged.
+ */
+public class Config {
+    // delta: ship a StateDelta to the backup on every write. full: ship the whole State.
+    public static final String REPLICATION = System.getProperty("maze.replication", "delta");
+
+    public static boolean deltaReplication() {
+        return !"full".equals(REPLICATION);
+    }
+
+    // rmi: java.rmi with an rmiregistry on the tracker's port. nio: NioTransport, no registry needed.
+    // loopback: LoopbackTransport, every node in this JVM, as run by the Simulator.
+    public static final String TRANSPORT = System.getProperty("maze.transport", "rmi");
+
+    // platform: a thread per request and background task, as before. virtual: virtual threads, on Java 21 and up
+    public static final String THREADS = System.getProperty("maze.threads", "platform");
+
+    // how long a nio or loopback call waits for its reply before failing with a RemoteException
+    public static final int NIO_TIMEOUT_MS = Integer.getInteger("maze.nio.timeout", 5000);
+
+    // replicate from a dedicated thread instead of inside the write lock
+    public static final boolean ASYNC_REPLICATION = Boolean.getBoolean("maze.replication.async");
+
+    // how many versions may wait for the backup's ack before writers are held back
+    public static final int REPLICATION_MAX_LAG = Integer.getInteger("maze.replication.maxLag", 64);
+
+    // block: writers wait for the backup to catch up. shed: moves are rejected until it does.
+    public static final String REPLICATION_OVERFLOW = System.getProperty("maze.replication.overflow", "block");
+
+    // queued: reply to the mover once the move is queued for the backup. acked: once the backup has it.
+    public static final String REPLICATION_ACK = System.getProperty("maze.replication.ack", "queued");
+
+    // milliseconds per tick of the primary's game loop. 0 leaves it off: writers take the write lock themselves
+    public static final int TICK_MS = Integer.getInteger("maze.tick", 0);
+
+    // how many writes may wait for the next tick before more are rejected
+    public static final int TICK_QUEUE = Integer.getInteger("maze.tick.queue", 4096);
+
+    public static boolean shedOnReplicationLag() {
+        return "shed".equals(REPLICATION_OVERFLOW);
+    }
+
+    public static boolean waitForReplicationAck() {
+        return "acked".equals(REPLICATION_ACK);
+    }
+
+    // the tracker splits the maze into perSide x perSide shards, each with its own primary and backup
+    public static final int SHARDS_PER_SIDE = Integer.getInteger("maze.shards.perSide", 1);
+
+    // how many of the latest deltas a backup keeps to answer getSince with changes instead of the whole state
+    public static final int DELTA_LOG_SIZE = Integer.getInteger("maze.deltaLog", 64);
+
+    // normal players subscribe to the backup's updates instead of only seeing changes on refresh or on their own moves
+    public static final boolean SUBSCRIBE = Boolean.getBoolean("maze.subscribe");
+
+    // the least time between two updates pushed to a subscriber
+    public static final int SUBSCRIBE_INTERVAL_MS = Integer.getInteger("maze.subscribe.interval", 100);
+
+    // phi above which a silent peer is suspected, it is taken as crashed once a ping to it failed too. higher waits longer
+    public static final double FD_PHI = Double.parseDouble(System.getProperty("maze.fd.phi", "8"));
+
+    // milliseconds a link may stay quiet before we ping the peer on it
+    public static final int FD_IDLE_MS = Integer.getInteger("maze.fd.idle", 500);
+
+    // find crashed players by gossip (SWIM) instead of the ping ring
+    public static final boolean GOSSIP = Boolean.getBoolean("maze.gossip");
+
+    // milliseconds between two membership probes of a player
+    public static final int GOSSIP_PERIOD_MS = Integer.getInteger("maze.gossip.period", 200);
+
+    // set on the tracker. directory where it logs the players, so that it still knows them after a restart
+    public static final String TRACKER_DIR = System.getProperty("maze.tracker.dir");
+
+    // force the tracker's log to disk before answering. off, a crash of the machine may lose the last changes
+    public static final boolean TRACKER_FSYNC = Boolean.parseBoolean(System.getProperty("maze.tracker.fsync", "true"));
+
+    // directory where the primary journals its changes, so that a game outlives its primary and backup
+    public static final String JOURNAL_DIR = System.getProperty("maze.journal.dir");
+
+    // deltas between two checkpoints of the whole state
+    public static final int JOURNAL_CHECKPOINT = Integer.getInteger("maze.journal.checkpoint", 1000);
+
+    // force every batch of journal records to disk. off, the journal survives a crash of the player but not of the machine
+    public static final boolean JOURNAL_FSYNC = Boolean.getBoolean("maze.journal.fsync");
+
+    // directory where a primary records the game, see Replay
+    public static final String RECORD_DIR = System.getProperty("maze.record.dir");
+
+    // port Metrics answers GET /metrics on, 0 for none. metrics are in JMX either way
+    public static final int METRICS_PORT = Integer.getInteger("maze.metrics.port", 0);
+
+    // events Trace keeps in memory, 0 for no tracing
+    public static final int TRACE_SIZE = Integer.getInteger("maze.trace", 0);
+
+    // file Trace writes its events to at exit, if set
+    public static final String TRACE_FILE = System.getProperty("maze.trace.file");
+}
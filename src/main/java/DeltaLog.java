@@ -0,0 +1,53 @@
+import java.util.ArrayDeque;
+
+/**
+ * DeltaLog keeps the latest deltas applied to a State, so that a reader a few versions behind
+ * can be sent the changes instead of the whole State.
+ * It is not thread safe, the owner guards it with the lock of the State.
+ */
+public class DeltaLog {
+    private final int capacity;
+    private final ArrayDeque<StateDelta> deltas = new ArrayDeque<>();
+
+    public DeltaLog(int capacity) {
+        this.capacity = capacity;
+    }
+
+    // add appends a delta. the log starts over if it does not follow on from the last one
+    public void add(StateDelta delta) {
+        if (capacity == 0) return;
+        StateDelta last = deltas.peekLast();
+        if (last != null && (last.shard != delta.shard || last.epoch != delta.epoch || last.count != delta.base)) {
+            deltas.clear();
+        }
+        deltas.addLast(delta);
+        while (deltas.size() > capacity) {
+            deltas.removeFirst();
+        }
+    }
+
+    public void clear() {
+        deltas.clear();
+    }
+
+    /**
+     * since merges the changes from version `from` to version `to` of game `epoch` into one delta.
+     * Returns null if the log does not cover them, or if they hold more than `maxOps` changes,
+     * in which case the whole State is the smaller answer.
+     */
+    public StateDelta since(int shard, long epoch, int from, int to, int maxOps) {
+        StateDelta merged = null;
+        for (StateDelta delta : deltas) {
+            if (merged == null) {
+                if (delta.shard != shard || delta.epoch != epoch || delta.base != from) continue;
+                merged = new StateDelta(shard, epoch, from);
+            }
+            merged.addAll(delta);
+            merged.count = delta.count;
+            if (merged.size() > maxOps) {
+                return null;
+            }
+        }
+        return merged != null && merged.count == to ? merged : null;
+    }
+}
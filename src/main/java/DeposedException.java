@@ -0,0 +1,15 @@
+// DeposedException is thrown to a primary whose backup has taken over from it
+public class DeposedException extends Exception {
+
+    public DeposedException() {
+        super();
+    }
+
+    public DeposedException(String message) {
+        super(message);
+    }
+
+    public DeposedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * FailureDetector is a phi accrual failure detector (Hayashibara et al.).
+ * It learns how often each peer is heard from, and turns the time since the peer was last heard
+ * into a suspicion level phi instead of taking a single failed call as a crash.
+ * Any call to or from a peer counts as a heartbeat, so busy links need no pings at all.
+ *
+ * Suspicion alone does not make a peer down: a slow peer is suspected just the same. isDown also
+ * wants a call to it that failed after we last heard from it.
+ */
+public class FailureDetector {
+    // how many of the latest intervals the estimate is based on
+    private static final int WINDOW = 100;
+
+    private final double threshold;
+    private final long firstIntervalMs;
+    private final double minStdDevMs;
+    // milliseconds, System.currentTimeMillis unless a test steps it
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, History> peers = new ConcurrentHashMap<>();
+
+    private static class History {
+        final long[] intervals = new long[WINDOW];
+        int size;
+        int next;
+        long sum;
+        long sumOfSquares;
+        long last;
+        // when a call to the peer last failed, 0 if none did
+        long failedAt;
+
+        History(long now, long firstInterval) {
+            last = now;
+            add(firstInterval);
+        }
+
+        void add(long interval) {
+            if (size == WINDOW) {
+                long dropped = intervals[next];
+                sum -= dropped;
+                sumOfSquares -= dropped * dropped;
+            } else {
+                size++;
+            }
+            intervals[next] = interval;
+            next = (next + 1) % WINDOW;
+            sum += interval;
+            sumOfSquares += interval * interval;
+        }
+    }
+
+    /**
+     * @param threshold phi above which a peer is suspected, 8 means a 1 in 10^8 chance of a wrong suspicion
+     * @param firstIntervalMs the interval assumed for a peer not heard from yet
+     */
+    public FailureDetector(double threshold, long firstIntervalMs) {
+        this(threshold, firstIntervalMs, System::currentTimeMillis);
+    }
+
+    FailureDetector(double threshold, long firstIntervalMs, LongSupplier clock) {
+        this.threshold = threshold;
+        this.clock = clock;
+        this.firstIntervalMs = firstIntervalMs;
+        // a peer heard very regularly must not be suspected the moment it is a little late
+        this.minStdDevMs = firstIntervalMs / 2.0;
+    }
+
+    // heartbeat records that we just heard from `peer`
+    public void heartbeat(String peer) {
+        long now = clock.getAsLong();
+        History h = peers.get(peer);
+        if (h == null) {
+            peers.putIfAbsent(peer, new History(now, firstIntervalMs));
+            return;
+        }
+        synchronized (h) {
+            h.add(now - h.last);
+            h.last = now;
+        }
+    }
+
+    // idleMillis is the time since we last heard from `peer`. A new peer starts being watched now.
+    public long idleMillis(String peer) {
+        History h = history(peer);
+        synchronized (h) {
+            return clock.getAsLong() - h.last;
+        }
+    }
+
+    public double phi(String peer) {
+        History h = history(peer);
+        long elapsed;
+        double mean;
+        double stdDev;
+        synchronized (h) {
+            elapsed = clock.getAsLong() - h.last;
+            mean = (double) h.sum / h.size;
+            stdDev = Math.sqrt(Math.max((double) h.sumOfSquares / h.size - mean * mean, 0));
+        }
+        return phi(elapsed, mean, Math.max(stdDev, minStdDevMs));
+    }
+
+    // phi is -log10 of the chance that a heartbeat is still to come `elapsed` after the last one
+    static double phi(double elapsed, double mean, double stdDev) {
+        // logistic approximation of the normal distribution's tail, as used by Akka and Cassandra
+        double y = (elapsed - mean) / stdDev;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (elapsed > mean) {
+            return -Math.log10(e / (1.0 + e));
+        }
+        return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+
+    public boolean suspects(String peer) {
+        return phi(peer) > threshold;
+    }
+
+    // failed records that a call to `peer` just failed
+    public void failed(String peer) {
+        History h = history(peer);
+        synchronized (h) {
+            h.failedAt = clock.getAsLong();
+        }
+    }
+
+    // isDown tells whether `peer` is suspected and a call to it failed since it was last heard from
+    public boolean isDown(String peer) {
+        History h = history(peer);
+        synchronized (h) {
+            if (h.failedAt <= h.last) return false;
+        }
+        return suspects(peer);
+    }
+
+    // forget drops what we learnt about `peer`, e.g. once it left the game
+    public void forget(String peer) {
+        peers.remove(peer);
+    }
+
+    private History history(String peer) {
+        return peers.computeIfAbsent(peer, p -> new History(clock.getAsLong(), firstIntervalMs));
+    }
+}
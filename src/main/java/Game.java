@@ -1,5 +1,4 @@
 import javax.swing.*;
-import java.rmi.registry.LocateRegistry;
 import java.util.Scanner;
 import java.util.Random;
 /**
@@ -17,24 +16,31 @@ public class Game {
         int port = Integer.parseInt(args[1]);
         String id = args[2];
 
+        Metrics.serve(Config.METRICS_PORT);
         PlayerImpl playerRef = new PlayerImpl(id);
 
         // bootstrap phase
-        TrackerRMI trackerRMIRef = (TrackerRMI) LocateRegistry.getRegistry(host, port).lookup("TrackerRMI");
+        TrackerRMI trackerRMIRef = Transport.get().lookupTracker(host, port, "TrackerRMI");
 
         boolean isSuccessful;
         int tries = 0;
-        Bootstrap bs = trackerRMIRef.register(playerRef, id);
+        Bootstrap bs = trackerRMIRef.register(playerRef.getStub(), id);
         isSuccessful = playerRef.bootstrap(bs);
 
         while (!isSuccessful && tries++ < 5) {
             Thread.sleep(500); // wait 0.5s for ping to detect failure
-            bs = trackerRMIRef.fetch();
+            bs = trackerRMIRef.fetchShard(bs.shard);
             isSuccessful = playerRef.bootstrap(bs);
         }
 
         if (!isSuccessful) {
             System.out.print("Failed to register after 5 tries");
+            // nobody else would take us off the tracker, we never made it into a game
+            try {
+                trackerRMIRef.unregister(id);
+            } catch (Exception e) {
+                System.out.println(e.getMessage());
+            }
             System.exit(1);
         }
 
@@ -48,6 +54,7 @@ public class Game {
         Random random = new Random();
         frame.setLocation(random.nextInt(500), random.nextInt(500));
         JPanel panel = playerRef.getPanel();
+        playerRef.setOnUpdate(panel::repaint);
         frame.getContentPane().add(panel);
         frame.setVisible(true);
 
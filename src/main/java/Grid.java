@@ -0,0 +1,122 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Grid is an occupancy index over the N x N cells of the maze.
+ * Each cell is either empty, taken by a player, or holds the index of the treasure lying on it.
+ * Cells outside the state's region belong to another shard and are never free.
+ * Empty cells are also kept in a dense array so that a random one can be picked in O(1).
+ */
+public class Grid {
+    public static final int EMPTY = -1;
+    public static final int PLAYER = -2;
+    public static final int OUTSIDE = -3;
+
+    private final int n;
+    private final ShardMap.Region region;
+    private final int[] cells;
+    // free[0..freeCount) are the empty cells, freeSlot[cell] is the cell's index in free (-1 if taken)
+    private final int[] free;
+    private final int[] freeSlot;
+    private int freeCount;
+
+    public Grid(int n, ShardMap.Region region) {
+        this.n = n;
+        this.region = region;
+        this.cells = new int[n * n];
+        this.free = new int[n * n];
+        this.freeSlot = new int[n * n];
+        for (int c = 0; c < cells.length; c++) {
+            if (region.contains(xOf(c), yOf(c))) {
+                cells[c] = EMPTY;
+                free[freeCount] = c;
+                freeSlot[c] = freeCount++;
+            } else {
+                cells[c] = OUTSIDE;
+                freeSlot[c] = -1;
+            }
+        }
+    }
+
+    // inBounds checks that (x, y) is in this grid's region
+    public boolean inBounds(int x, int y) {
+        return region.contains(x, y);
+    }
+
+    public boolean hasPlayer(int x, int y) {
+        return cells[cell(x, y)] == PLAYER;
+    }
+
+    // treasureAt returns the index of the treasure at (x, y), -1 if there is none
+    public int treasureAt(int x, int y) {
+        int v = cells[cell(x, y)];
+        return v >= 0 ? v : -1;
+    }
+
+    public void placePlayer(int x, int y) {
+        set(cell(x, y), PLAYER);
+    }
+
+    public void removePlayer(int x, int y) {
+        int c = cell(x, y);
+        if (cells[c] == PLAYER) set(c, EMPTY);
+    }
+
+    public void placeTreasure(int x, int y, int idx) {
+        set(cell(x, y), idx);
+    }
+
+    public void removeTreasure(int x, int y, int idx) {
+        int c = cell(x, y);
+        if (cells[c] == idx) set(c, EMPTY);
+    }
+
+    public int freeCount() {
+        return freeCount;
+    }
+
+    // randomFree returns a uniformly chosen empty cell, -1 if the maze is full
+    public int randomFree(Random random) {
+        if (freeCount == 0) return -1;
+        return free[random.nextInt(freeCount)];
+    }
+
+    /**
+     * sortFree puts the empty cells in cell order. Which cell randomFree picks depends on their order,
+     * which otherwise depends on the order cells were taken and freed in.
+     */
+    public void sortFree() {
+        Arrays.sort(free, 0, freeCount);
+        for (int slot = 0; slot < freeCount; slot++) {
+            freeSlot[free[slot]] = slot;
+        }
+    }
+
+    public int xOf(int cell) {
+        return cell % n;
+    }
+
+    public int yOf(int cell) {
+        return cell / n;
+    }
+
+    private int cell(int x, int y) {
+        return y * n + x;
+    }
+
+    private void set(int c, int value) {
+        boolean wasFree = cells[c] == EMPTY;
+        cells[c] = value;
+        if (wasFree && value != EMPTY) {
+            // swap the last free cell into c's slot
+            int slot = freeSlot[c];
+            int last = free[--freeCount];
+            free[slot] = last;
+            freeSlot[last] = slot;
+            freeSlot[c] = -1;
+        } else if (!wasFree && value == EMPTY) {
+            free[freeCount] = c;
+            freeSlot[c] = freeCount++;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram counts latencies in nanoseconds, any number of threads recording at once without a lock.
+ *
+ * Values below 128 get a bucket each. Above, every power of two is split into 64 buckets,
+ * so a bucket is never more than 1/64th (1.6%) wider than the values in it.
+ * Percentiles are read off the buckets and are that close to the exact ones.
+ */
+public class Histogram {
+    private static final int SUB_BITS = 6;
+    private static final int SUB = 1 << SUB_BITS;
+    // enough buckets for any positive long
+    private static final int BUCKETS = (63 - SUB_BITS) * SUB + 2 * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        total.increment();
+        sum.add(nanos);
+        long m = max.get();
+        while (nanos > m && !max.compareAndSet(m, nanos)) {
+            m = max.get();
+        }
+    }
+
+    // bucket is `shift` * SUB + the top SUB_BITS + 1 bits of the value, shift being what is cut off below them
+    private static int bucket(long v) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(v) - SUB_BITS);
+        return shift * SUB + (int) (v >>> shift);
+    }
+
+    // lowest returns the smallest value that falls into bucket `i`
+    private static long lowest(int i) {
+        if (i < 2 * SUB) return i;
+        int shift = i / SUB - 1;
+        return (long) (i - shift * SUB) << shift;
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = total.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * percentile returns the value `q` (0 to 1) of the recordings are at or below, 0 if there are none.
+     * It reads the buckets as they are, recordings made meanwhile may or may not be in.
+     */
+    public long percentile(double q) {
+        long n = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(lowest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+}
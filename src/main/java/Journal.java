@@ -0,0 +1,230 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Journal keeps the primary's changes on disk, so that a game can be recovered after its primary
+ * and backup are both gone.
+ *
+ * The primary hands each delta it ships to the backup to `append`, which only queues it.
+ * A writer thread writes whatever has queued up in one go, and every Config.JOURNAL_CHECKPOINT deltas
+ * writes the whole State as a checkpoint and starts the journal over.
+ * A player switching shard or taking over as primary starts with a checkpoint as well.
+ *
+ * Files are named after the shard and the player, so that several players can share a directory.
+ * `recover` picks whichever file pair gets the shard furthest.
+ */
+public class Journal {
+    private final Path dir;
+    private final String name;
+    private final PlayerImpl owner;
+    private final LinkedBlockingQueue<StateDelta> queue = new LinkedBlockingQueue<>();
+
+    // only touched by the writer thread
+    private FileChannel channel;
+    private int shard = -1;
+    private long epoch;
+    // version the journal has reached, -1 before the first checkpoint
+    private int last = -1;
+    private int sinceCheckpoint;
+
+    public Journal(String dir, String name, PlayerImpl owner) throws IOException {
+        this.dir = Paths.get(dir);
+        this.name = name;
+        this.owner = owner;
+        Files.createDirectories(this.dir);
+        Threads.startPlatform("journal", this::run);
+    }
+
+    // append is called under the primary's write lock, in version order
+    public void append(StateDelta delta) {
+        queue.add(delta);
+    }
+
+    private void run() {
+        List<StateDelta> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.clear();
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                write(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.out.println("journal: " + e.getMessage());
+                // start over from a checkpoint rather than leave a hole
+                last = -1;
+            }
+        }
+    }
+
+    private void write(List<StateDelta> batch) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (StateDelta delta : batch) {
+            // already in the checkpoint
+            if (delta.shard == shard && delta.epoch == epoch && delta.count <= last) continue;
+            if (delta.shard != shard || delta.epoch != epoch || delta.base != last) {
+                flush(records);
+                checkpoint(delta.shard);
+                epoch = delta.epoch;
+                if (delta.count <= last) continue;
+                if (delta.base != last) {
+                    // the state moved on past it before the checkpoint, the next one follows on from there
+                    continue;
+                }
+            }
+            record(records, delta);
+            last = delta.count;
+            sinceCheckpoint++;
+        }
+        flush(records);
+
+        if (sinceCheckpoint >= Config.JOURNAL_CHECKPOINT) {
+            checkpoint(shard);
+        }
+    }
+
+    private void flush(ByteArrayOutputStream records) throws IOException {
+        if (records.size() == 0) return;
+        ByteBuffer buf = ByteBuffer.wrap(records.toByteArray());
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        if (Config.JOURNAL_FSYNC) {
+            channel.force(false);
+        }
+        records.reset();
+    }
+
+    /**
+     * checkpoint writes the owner's state of `shard` and empties the journal,
+     * every delta written so far is in it.
+     */
+    private void checkpoint(int shard) throws IOException {
+        if (shard != this.shard || channel == null) {
+            if (channel != null) {
+                channel.close();
+            }
+            this.shard = shard;
+            channel = FileChannel.open(journalFile(shard), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int version;
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            version = owner.checkpointTo(out, shard);
+        }
+        if (version < 0) {
+            // we have moved on, the next delta brings us to the right file
+            last = -1;
+            return;
+        }
+
+        Path tmp = checkpointFile(shard).resolveSibling(checkpointFile(shard).getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
+        }
+        Files.move(tmp, checkpointFile(shard), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.truncate(0);
+        channel.position(0);
+
+        last = version;
+        sinceCheckpoint = 0;
+    }
+
+    private static void record(ByteArrayOutputStream records, StateDelta delta) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            delta.writeExternal(out);
+        }
+        byte[] body = bytes.toByteArray();
+        ByteBuffer head = ByteBuffer.allocate(8);
+        head.putInt(body.length);
+        head.putInt(checksum(body));
+        records.write(head.array());
+        records.write(body);
+    }
+
+    private Path journalFile(int shard) {
+        return dir.resolve("shard" + shard + "-" + name + ".journal");
+    }
+
+    private Path checkpointFile(int shard) {
+        return dir.resolve("shard" + shard + "-" + name + ".checkpoint");
+    }
+
+    /**
+     * recover rebuilds the latest state of `shard` found in `dir`: the newest checkpoint with the
+     * journal written after it replayed on top. A record cut short by a crash ends the replay.
+     * Returns null if there is nothing to recover.
+     */
+    public static State recover(String dir, int shard) {
+        File[] checkpoints = new File(dir).listFiles((d, f) -> f.startsWith("shard" + shard + "-") && f.endsWith(".checkpoint"));
+        if (checkpoints == null) return null;
+
+        State best = null;
+        for (File f : checkpoints) {
+            try {
+                State state = new State();
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(Files.readAllBytes(f.toPath())))) {
+                    state.readExternal(in);
+                }
+                Path journal = Paths.get(f.getPath().replaceAll("\\.checkpoint$", ".journal"));
+                if (Files.exists(journal)) {
+                    replay(state, Files.readAllBytes(journal));
+                }
+                if (best == null || state.count > best.count) {
+                    best = state;
+                }
+            } catch (Exception e) {
+                System.out.println("cannot recover from " + f + ": " + e.getMessage());
+            }
+        }
+        return best;
+    }
+
+    private static void replay(State state, byte[] journal) throws IOException, ClassNotFoundException {
+        DataInputStream records = new DataInputStream(new ByteArrayInputStream(journal));
+        while (records.available() >= 8) {
+            int length = records.readInt();
+            int crc = records.readInt();
+            if (length <= 0 || length > records.available()) return;
+            byte[] body = new byte[length];
+            records.readFully(body);
+            if (checksum(body) != crc) return;
+
+            StateDelta delta = new StateDelta();
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(body))) {
+                delta.readExternal(in);
+            }
+            if (delta.count <= state.count) continue;
+            if (!state.apply(delta)) return;
+        }
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LoadGenerator puts a game under a steady load and measures how it copes, with no one at the keyboard.
+ *
+ * The game runs in this JVM as in the Simulator, with its crashes. Moves and gets are sent straight
+ * through the Player interface, as players send them: moves to the primary a player knows of, gets
+ * to its backup. A failed call makes the player refresh its state, as a real one would.
+ * Calls are started on a fixed schedule at `load.rate` per second, whether or not earlier ones are done,
+ * and each one is timed from when it was due, so a stalled game shows up in the latencies.
+ *
+ * Latencies are kept for move, get, register (joining, until in the game) and failover (a primary
+ * crashing, until the next move in its shard goes through). The results go to `load.out` as JSON.
+ *
+ *     java LoadGenerator <players> [seconds] [N] [K]
+ *
+ *     load.rate      calls per second, 1000
+ *     load.getRatio  share of the calls that are gets, 0.1
+ *     load.threads   threads making the calls, 32
+ *     load.out       where the results go, load.json
+ * Joins and crashes are set with the sim.* properties of the Simulator.
+ */
+public class LoadGenerator {
+    private static final double RATE = Double.parseDouble(System.getProperty("load.rate", "1000"));
+    private static final double GET_RATIO = Double.parseDouble(System.getProperty("load.getRatio", "0.1"));
+    private static final int THREADS = Integer.getInteger("load.threads", 32);
+    private static final String OUT = System.getProperty("load.out", "load.json");
+
+    private final Simulator sim;
+    private final Map<String, Op> ops = new LinkedHashMap<>();
+    private final Op move = op("move");
+    private final Op get = op("get");
+    private final Op register = op("register");
+    private final Op failover = op("failover");
+    // when each shard last lost its primary, until a move gets through there again
+    private final Map<Integer, Long> failingOver = new ConcurrentHashMap<>();
+    private final AtomicLong next = new AtomicLong();
+    private final LongAdder skipped = new LongAdder();
+
+    private static class Op {
+        final Histogram latency = new Histogram();
+        final LongAdder errors = new LongAdder();
+    }
+
+    public LoadGenerator(Simulator sim) {
+        this.sim = sim;
+        sim.onJoin(nanos -> {
+            if (nanos < 0) {
+                register.errors.increment();
+            } else {
+                register.latency.record(nanos);
+            }
+        });
+        sim.onCrash((shard, primary) -> {
+            if (primary) {
+                failingOver.putIfAbsent(shard, System.nanoTime());
+            }
+        });
+    }
+
+    private Op op(String name) {
+        Op op = new Op();
+        ops.put(name, op);
+        return op;
+    }
+
+    // drive makes calls until `end`, the i-th call of all threads being due at start + i / RATE
+    private void drive(long start, long end) {
+        while (true) {
+            long due = start + (long) (next.getAndIncrement() * 1e9 / RATE);
+            if (due >= end) return;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            try {
+                call(due);
+            } catch (RuntimeException e) {
+                // the player's state changed while we picked from it
+                skipped.increment();
+            }
+        }
+    }
+
+    private void call(long due) {
+        Simulator.Sim[] players = sim.players();
+        if (players.length < 2) {
+            skipped.increment();
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Simulator.Sim who = players[random.nextInt(players.length)];
+        State state = who.player.state;
+        if (state == null) {
+            skipped.increment();
+            return;
+        }
+
+        boolean isGet = random.nextDouble() < GET_RATIO;
+        int target = isGet ? 1 : 0;
+        // players do not call themselves, nor do they get from a primary
+        if (state.playerRefs.size() <= target || state.nameAt(target).equals(who.name)) {
+            skipped.increment();
+            return;
+        }
+        Player ref = state.playerRefs.get(target);
+        Op op = isGet ? get : move;
+        try {
+            if (isGet) {
+                ref.get(who.name);
+            } else {
+                ref.move(Move.values()[random.nextInt(Move.values().length)], who.name);
+            }
+        } catch (Exception e) {
+            op.errors.increment();
+            who.player.refreshState();
+            return;
+        }
+        long done = System.nanoTime();
+        op.latency.record(done - due);
+        if (!isGet) {
+            Long crashed = failingOver.remove(state.getShard());
+            if (crashed != null) {
+                failover.latency.record(done - crashed);
+            }
+        }
+    }
+
+    public void run(int players, int seconds) throws InterruptedException {
+        sim.populate(players);
+
+        long start = System.nanoTime();
+        long end = start + seconds * 1000000000L;
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = new Thread(() -> drive(start, end), "load-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        while (System.nanoTime() < end) {
+            sim.chaos(players);
+            Thread.sleep(10);
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+    }
+
+    public void report(PrintStream console, int players, int seconds) throws IOException {
+        console.printf("%-9s %9s %7s %9s %9s %9s %9s %9s%n", "op", "count", "errors", "per s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Map.Entry<String, Op> e : ops.entrySet()) {
+            Histogram h = e.getValue().latency;
+            console.printf("%-9s %9d %7d %9.0f %9.2f %9.2f %9.2f %9.2f%n", e.getKey(), h.count(), e.getValue().errors.sum(),
+                    (double) h.count() / seconds, ms(h.percentile(0.5)), ms(h.percentile(0.99)), ms(h.percentile(0.999)), ms(h.max()));
+        }
+        console.println(skipped.sum() + " calls skipped, " + sim.summary());
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(OUT)))) {
+            out.println("{");
+            out.printf(Locale.ROOT, "  \"players\": %d, \"seconds\": %d, \"rate\": %s, \"getRatio\": %s, \"threads\": %d,%n", players, seconds, RATE, GET_RATIO, THREADS);
+            out.printf(Locale.ROOT, "  \"shardsPerSide\": %d, \"replication\": \"%s\", \"asyncReplication\": %b, \"skipped\": %d,%n",
+                    Config.SHARDS_PER_SIDE, Config.REPLICATION, Config.ASYNC_REPLICATION, skipped.sum());
+            out.println("  \"ops\": {");
+            int i = 0;
+            for (Map.Entry<String, Op> e : ops.entrySet()) {
+                Histogram h = e.getValue().latency;
+                out.printf(Locale.ROOT, "    \"%s\": {\"count\": %d, \"errors\": %d, \"perSecond\": %.1f, \"meanMs\": %.3f, \"p50Ms\": %.3f, \"p99Ms\": %.3f, \"p999Ms\": %.3f, \"maxMs\": %.3f}%s%n",
+                        e.getKey(), h.count(), e.getValue().errors.sum(), (double) h.count() / seconds, h.mean() / 1e6,
+                        ms(h.percentile(0.5)), ms(h.percentile(0.99)), ms(h.percentile(0.999)), ms(h.max()),
+                        ++i < ops.size() ? "," : "");
+            }
+            out.println("  }");
+            out.println("}");
+        }
+        console.println("results written to " + OUT);
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: java LoadGenerator <players> [seconds] [N] [K]");
+            System.exit(1);
+        }
+        // every node lives in this JVM, before anything reads Config
+        System.setProperty("maze.transport", "loopback");
+        int players = Integer.parseInt(args[0]);
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int n = args.length > 2 ? Integer.parseInt(args[2]) : Math.max(15, (int) Math.ceil(Math.sqrt(players * 4.0)));
+        int k = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        // the players report every move, which would drown the results
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {}
+        }));
+
+        console.printf("%d players on a %d x %d maze with %d treasures, %.0f calls/s for %d s%n", players, n, n, k, RATE, seconds);
+        LoadGenerator load = new LoadGenerator(new Simulator(n, k, console));
+        load.run(players, seconds);
+        load.report(console, players, seconds);
+        System.exit(0);
+    }
+}
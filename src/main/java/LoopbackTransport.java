@@ -0,0 +1,264 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.ConnectException;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * LoopbackTransport carries Player and TrackerRMI calls between nodes living in the same JVM,
+ * picked with -Dmaze.transport=loopback. It is what the Simulator runs its players on.
+ *
+ * A node is a ThreadGroup: objects exported from a thread of the group belong to its node, and so do
+ * the threads they start. Virtual threads all share one group, so a thread that entered a node passes it
+ * on to the threads it starts instead, and to those of the thread factories it makes, whoever later
+ * starts them. Calls are run on workers of the callee's node, with their arguments and results copied
+ * through serialization, so nodes share no objects just as with RMI.
+ *
+ * crash takes a node down as if its process was killed: calls to it fail, and so do calls its own
+ * threads still make. Its platform threads are interrupted, virtual ones find out on their next call.
+ */
+public class LoopbackTransport extends Transport {
+    private final Map<String, Object> exported = new ConcurrentHashMap<>();
+    // node of each exported object, by key
+    private final Map<String, Node> owners = new ConcurrentHashMap<>();
+    private final Map<ThreadGroup, Node> nodes = new ConcurrentHashMap<>();
+    // node of the running thread if it entered one, handed down to the threads it starts
+    private final InheritableThreadLocal<Node> current = new InheritableThreadLocal<>();
+
+    public LoopbackTransport() {
+        Threads.inherit = this::onCurrentNode;
+    }
+
+    // onCurrentNode makes the threads of `factory` belong to the node of the running thread
+    private ThreadFactory onCurrentNode(ThreadFactory factory) {
+        Node node = current.get();
+        if (node == null) return factory;
+        return r -> factory.newThread(() -> {
+            current.set(node);
+            r.run();
+        });
+    }
+
+    private static class Node {
+        final ThreadGroup group;
+        final ExecutorService workers;
+        volatile boolean down;
+
+        Node(ThreadGroup group) {
+            this.group = group;
+            this.workers = Threads.perTask(group, group.getName() + "-worker");
+        }
+    }
+
+    @Override
+    public Player export(Player player, String name) {
+        String key = "player/" + name;
+        bind(key, player);
+        return (Player) proxy(Player.class, new Ref(key));
+    }
+
+    @Override
+    public TrackerRMI exportTracker(TrackerRMI tracker, int port, String name) {
+        String key = "tracker/" + port + "/" + name;
+        bind(key, tracker);
+        return (TrackerRMI) proxy(TrackerRMI.class, new Ref(key));
+    }
+
+    @Override
+    public TrackerRMI lookupTracker(String host, int port, String name) {
+        return (TrackerRMI) proxy(TrackerRMI.class, new Ref("tracker/" + port + "/" + name));
+    }
+
+    private void bind(String key, Object target) {
+        exported.put(key, target);
+        owners.put(key, currentNode());
+    }
+
+    /**
+     * enter makes the running thread, and the threads it starts from now on, part of the node of `group`.
+     * It is needed with virtual threads, which cannot be told apart by their group.
+     */
+    public void enter(ThreadGroup group) {
+        current.set(nodeOf(group));
+    }
+
+    private Node currentNode() {
+        Node node = current.get();
+        return node != null ? node : nodeOf(Thread.currentThread().getThreadGroup());
+    }
+
+    private Node nodeOf(ThreadGroup group) {
+        return nodes.computeIfAbsent(group, Node::new);
+    }
+
+    /**
+     * crash takes down the node of `group`. Its exported objects are dropped and its threads are
+     * interrupted, whatever they still try to call fails.
+     */
+    public void crash(ThreadGroup group) {
+        Node node = nodeOf(group);
+        node.down = true;
+        owners.entrySet().removeIf(e -> {
+            if (e.getValue() != node) return false;
+            exported.remove(e.getKey());
+            return true;
+        });
+        node.workers.shutdownNow();
+        group.interrupt();
+    }
+
+    private static Object proxy(Class<?> type, Ref ref) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, ref);
+    }
+
+    /**
+     * call runs one call on the callee's node and waits for it, like a remote call would.
+     */
+    Object call(Ref ref, Method method, Object[] args) throws Throwable {
+        Node caller = current.get();
+        if (caller == null) {
+            caller = nodes.get(Thread.currentThread().getThreadGroup());
+        }
+        if (caller != null && caller.down) {
+            throw new ConnectException("node " + caller.group.getName() + " is down");
+        }
+        Object target = exported.get(ref.key);
+        Node callee = owners.get(ref.key);
+        if (target == null || callee == null || callee.down) {
+            throw new ConnectException("cannot reach " + ref.key);
+        }
+
+        byte[] request = encode(args == null ? new Object[0] : args);
+        Future<Object> reply;
+        try {
+            reply = callee.workers.submit(() -> {
+                // a pooled worker may have been started by the caller and taken its node
+                current.set(callee);
+                Object[] copied = (Object[]) decode(request);
+                try {
+                    return encode(method.invoke(target, copied));
+                } catch (InvocationTargetException e) {
+                    throw new Failure(e.getCause());
+                }
+            });
+        } catch (RuntimeException e) {
+            // the pool was shut down by a crash in the meantime
+            throw new ConnectException("cannot reach " + ref.key);
+        }
+
+        byte[] result;
+        try {
+            result = (byte[]) reply.get(Config.NIO_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            reply.cancel(true);
+            throw new RemoteException(method.getName() + " to " + ref.key + " timed out");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Failure) {
+                throw e.getCause().getCause();
+            }
+            throw e.getCause();
+        }
+        if (callee.down) {
+            // crashed before the reply could have left
+            throw new ConnectException("cannot reach " + ref.key);
+        }
+        return decode(result);
+    }
+
+    // Failure carries what the called method threw, apart from failures of the call itself
+    private static class Failure extends Exception {
+        private static final long serialVersionUID = Wire.FORMAT;
+
+        Failure(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    private static byte[] encode(Object o) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(o);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object decode(byte[] payload) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return in.readObject();
+        }
+    }
+
+    /**
+     * Ref is what travels in State.playerRefs and Bootstrap when the loopback transport is used.
+     */
+    public static class Ref implements InvocationHandler, Serializable {
+        private static final long serialVersionUID = Wire.FORMAT;
+
+        final String key;
+
+        Ref(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return args[0] != null && Proxy.isProxyClass(args[0].getClass())
+                                && equals(Proxy.getInvocationHandler(args[0]));
+                    case "hashCode":
+                        return hashCode();
+                    default:
+                        return toString();
+                }
+            }
+
+            Transport transport = Transport.get();
+            if (!(transport instanceof LoopbackTransport)) {
+                throw new RemoteException("loopback reference used without -Dmaze.transport=loopback");
+            }
+            try {
+                return ((LoopbackTransport) transport).call(this, method, args);
+            } catch (RemoteException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                // like RMI, checked exceptions the method does not declare arrive wrapped
+                for (Class<?> declared : method.getExceptionTypes()) {
+                    if (declared.isInstance(e)) throw e;
+                }
+                throw new RemoteException("remote call failed", e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Ref && key.equals(((Ref) o).key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + "@loopback";
+        }
+    }
+}
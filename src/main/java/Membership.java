@@ -0,0 +1,318 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Membership finds crashed players the SWIM way (Das, Gupta and Motivala).
+ *
+ * Every period a player probes one member, going round the members in a shuffled order.
+ * If the member does not answer within a period, a few others are asked to probe it for us and given
+ * two more, so that one bad link or a slow reply does not make a crash. A member nobody reaches is suspected, and declared dead
+ * if it has not refuted the suspicion within a few periods.
+ *
+ * Suspicions, refutations and deaths ride on the probes, each passed on a few times,
+ * so they reach everyone in O(log n) periods while each player still sends one probe per period.
+ * onDead is called once for each member found dead. A member that was wrongly found dead comes back
+ * once it hears of it and refutes it with a newer incarnation.
+ */
+public class Membership {
+    // members asked to probe a member that did not answer us
+    private static final int INDIRECT_PROBES = 3;
+    // a rumor is passed on this many times log(n)
+    private static final int RETRANSMIT_MULT = 3;
+    // a suspect has this many times log(n) periods to refute
+    private static final int SUSPICION_MULT = 3;
+    // most rumors sent on one probe
+    private static final int MAX_PIGGYBACK = 8;
+    // probes in flight at once, ours and those others asked us for. the rest wait their turn
+    private static final int PROBE_THREADS = 2 * (INDIRECT_PROBES + 1);
+
+    private final String self;
+    private final long periodMs;
+    private final Consumer<String> onDead;
+    private final Random random = new Random();
+    // probes run here, so that they can be given up on
+    private final ExecutorService calls = Threads.bounded("membership", PROBE_THREADS);
+    // onDead runs here, one death at a time and off our lock
+    private final ExecutorService events = Executors.newSingleThreadExecutor(Threads.factory("membership-events"));
+
+    // all guarded by `this`
+    private int incarnation;
+    private final HashMap<String, Member> members = new HashMap<>();
+    // rumors still to be passed on, at most one per member
+    private final HashMap<String, Pending> outbox = new HashMap<>();
+    private final List<String> order = new ArrayList<>();
+    private int next;
+
+    private static class Member {
+        final String name;
+        Player ref;
+        int status = Rumor.ALIVE;
+        int incarnation;
+        long suspectedAt;
+
+        Member(String name, Player ref) {
+            this.name = name;
+            this.ref = ref;
+        }
+    }
+
+    private static class Pending {
+        final Rumor rumor;
+        int sendsLeft;
+
+        Pending(Rumor rumor, int sendsLeft) {
+            this.rumor = rumor;
+            this.sendsLeft = sendsLeft;
+        }
+    }
+
+    public Membership(String self, long periodMs, Consumer<String> onDead) {
+        this.self = self;
+        this.periodMs = periodMs;
+        this.onDead = onDead;
+    }
+
+    /**
+     * sync makes the members those of the game state. Members the primary removed are dropped,
+     * new ones are taken to be alive.
+     */
+    public synchronized void sync(List<String> names, List<Player> refs) {
+        HashMap<String, Member> current = new HashMap<>();
+        for (int i = 0; i < names.size() && i < refs.size(); i++) {
+            String name = names.get(i);
+            if (name.equals(self)) continue;
+            Member m = members.get(name);
+            if (m == null) {
+                m = new Member(name, refs.get(i));
+            }
+            m.ref = refs.get(i);
+            current.put(name, m);
+        }
+        members.clear();
+        members.putAll(current);
+        outbox.keySet().removeIf(name -> !name.equals(self) && !members.containsKey(name));
+    }
+
+    // dead returns the members found dead that are still in the game state
+    public synchronized List<String> dead() {
+        List<String> dead = new ArrayList<>();
+        for (Member m : members.values()) {
+            if (m.status == Rumor.DEAD) {
+                dead.add(m.name);
+            }
+        }
+        return dead;
+    }
+
+    // tick runs one protocol period: it gives up on stale suspects, then probes the next member
+    public void tick() {
+        Member target;
+        List<Member> helpers = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Member m : members.values()) {
+                if (m.status == Rumor.SUSPECT && now - m.suspectedAt > suspicionTimeout()) {
+                    declareDead(m);
+                }
+            }
+
+            target = nextTarget();
+            if (target == null) return;
+            for (Member m : members.values()) {
+                if (m != target && m.status == Rumor.ALIVE) {
+                    helpers.add(m);
+                }
+            }
+        }
+        Collections.shuffle(helpers, random);
+
+        long deadline = System.currentTimeMillis() + periodMs;
+        if (probe(target, deadline)) return;
+        // a helper gets a period to reach it, and a period for its reply to come back
+        if (probeIndirectly(target, helpers.subList(0, Math.min(INDIRECT_PROBES, helpers.size())), deadline + 2 * periodMs)) return;
+        suspect(target);
+    }
+
+    // gossip answers a direct probe
+    public List<Rumor> gossip(String caller, List<Rumor> rumors) {
+        receive(rumors);
+        List<Rumor> reply = outgoing();
+        deathOf(caller, reply);
+        return reply;
+    }
+
+    // deathOf tells a caller we hold dead that it is, so that it can refute it even once the rumor died down
+    private synchronized void deathOf(String caller, List<Rumor> reply) {
+        Member m = members.get(caller);
+        if (m == null || m.status != Rumor.DEAD) return;
+        for (Rumor r : reply) {
+            if (r.name.equals(caller)) return;
+        }
+        reply.add(new Rumor(caller, Rumor.DEAD, m.incarnation));
+    }
+
+    // probeFor answers a request to probe `target` for `caller`. It throws if the target does not answer in time
+    public List<Rumor> probeFor(String caller, Player target, List<Rumor> rumors) throws Exception {
+        receive(rumors);
+        Future<List<Rumor>> reply = calls.submit(() -> target.gossip(self, outgoing()));
+        try {
+            receive(reply.get(periodMs, TimeUnit.MILLISECONDS));
+        } catch (Exception e) {
+            reply.cancel(true);
+            throw new Exception(self + " cannot reach the member " + caller + " asked about");
+        }
+        return outgoing();
+    }
+
+    private boolean probe(Member target, long deadline) {
+        Future<List<Rumor>> reply = calls.submit(() -> target.ref.gossip(self, outgoing()));
+        try {
+            receive(reply.get(Math.max(deadline - System.currentTimeMillis(), 1), TimeUnit.MILLISECONDS));
+            return true;
+        } catch (Exception e) {
+            reply.cancel(true);
+            return false;
+        }
+    }
+
+    private boolean probeIndirectly(Member target, List<Member> helpers, long deadline) {
+        if (helpers.isEmpty()) return false;
+        CompletionService<List<Rumor>> replies = new ExecutorCompletionService<>(calls);
+        List<Future<List<Rumor>>> asked = new ArrayList<>();
+        for (Member helper : helpers) {
+            asked.add(replies.submit(() -> helper.ref.probe(self, target.ref, outgoing())));
+        }
+        try {
+            for (int i = 0; i < asked.size(); i++) {
+                Future<List<Rumor>> reply = replies.poll(Math.max(deadline - System.currentTimeMillis(), 1), TimeUnit.MILLISECONDS);
+                if (reply == null) return false;
+                try {
+                    receive(reply.get());
+                    return true;
+                } catch (Exception e) {
+                    // that helper could not reach it either
+                }
+            }
+            return false;
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            for (Future<List<Rumor>> f : asked) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    private synchronized void suspect(Member target) {
+        // it may have been dropped or refuted meanwhile
+        if (members.get(target.name) != target || target.status != Rumor.ALIVE) return;
+        System.out.println(self + " suspects " + target.name);
+        target.status = Rumor.SUSPECT;
+        target.suspectedAt = System.currentTimeMillis();
+        spread(new Rumor(target.name, Rumor.SUSPECT, target.incarnation));
+    }
+
+    private void declareDead(Member m) {
+        m.status = Rumor.DEAD;
+        spread(new Rumor(m.name, Rumor.DEAD, m.incarnation));
+        String name = m.name;
+        events.execute(() -> onDead.accept(name));
+    }
+
+    private synchronized void receive(List<Rumor> rumors) {
+        if (rumors == null) return;
+        for (Rumor r : rumors) {
+            if (r.name.equals(self)) {
+                // we are alive, whatever they think. a newer incarnation overrides their rumor
+                if (r.status != Rumor.ALIVE && r.incarnation >= incarnation) {
+                    incarnation = r.incarnation + 1;
+                    spread(new Rumor(self, Rumor.ALIVE, incarnation));
+                }
+                continue;
+            }
+
+            Member m = members.get(r.name);
+            // not in our game, e.g. a player of another shard
+            if (m == null) continue;
+            switch (r.status) {
+                case Rumor.ALIVE:
+                    // a newer incarnation refutes a suspicion, or a death it heard of
+                    if (r.incarnation > m.incarnation) {
+                        m.status = Rumor.ALIVE;
+                        m.incarnation = r.incarnation;
+                        spread(r);
+                    }
+                    break;
+                case Rumor.SUSPECT:
+                    if (m.status == Rumor.DEAD) break;
+                    if (r.incarnation > m.incarnation || (r.incarnation == m.incarnation && m.status == Rumor.ALIVE)) {
+                        m.status = Rumor.SUSPECT;
+                        m.incarnation = r.incarnation;
+                        m.suspectedAt = System.currentTimeMillis();
+                        spread(r);
+                    }
+                    break;
+                default:
+                    // older than what refuted it, or known already
+                    if (r.incarnation < m.incarnation || m.status == Rumor.DEAD) break;
+                    m.incarnation = r.incarnation;
+                    declareDead(m);
+                    break;
+            }
+        }
+    }
+
+    // outgoing picks the rumors for the next message, the least passed on first
+    private synchronized List<Rumor> outgoing() {
+        List<Pending> pending = new ArrayList<>(outbox.values());
+        pending.sort((a, b) -> b.sendsLeft - a.sendsLeft);
+        List<Rumor> rumors = new ArrayList<>();
+        for (Pending p : pending) {
+            if (rumors.size() == MAX_PIGGYBACK) break;
+            rumors.add(p.rumor);
+            if (--p.sendsLeft == 0) {
+                outbox.remove(p.rumor.name);
+            }
+        }
+        return rumors;
+    }
+
+    // spread queues a rumor for passing on. it replaces an older one about the same member
+    private void spread(Rumor rumor) {
+        outbox.put(rumor.name, new Pending(rumor, RETRANSMIT_MULT * log2(members.size() + 1)));
+    }
+
+    private Member nextTarget() {
+        for (int tries = 0; tries <= members.size(); tries++) {
+            if (next >= order.size()) {
+                // a new round, in a new order
+                order.clear();
+                order.addAll(members.keySet());
+                Collections.shuffle(order, random);
+                next = 0;
+                if (order.isEmpty()) return null;
+            }
+            Member m = members.get(order.get(next++));
+            if (m != null && m.status != Rumor.DEAD) return m;
+        }
+        return null;
+    }
+
+    private long suspicionTimeout() {
+        return SUSPICION_MULT * log2(members.size() + 1) * periodMs;
+    }
+
+    private static int log2(int n) {
+        return Math.max(32 - Integer.numberOfLeadingZeros(n), 1);
+    }
+}
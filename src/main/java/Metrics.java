@@ -0,0 +1,251 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics counts and times what a node does, without taking a lock on the way.
+ *
+ * Every metric is a JMX MBean named maze:type=Timer|Counter|Gauge,name=<name>, e.g. for jconsole.
+ * With Config.METRICS_PORT set, serve also answers GET /metrics on that port with all of them as
+ * plain text, one value per line, in the format Prometheus scrapes, and GET /trace with the Trace ring.
+ *
+ * Metrics are per JVM. When one JVM runs many players, as the Simulator does, timers and counters
+ * add up over all of them and gauges show whichever player set them last.
+ */
+public class Metrics {
+    private static final List<Metric> all = new ArrayList<>();
+
+    // primary
+    public static final Timer MOVE = timer("move", "moves served by the primary, from the call to the reply");
+    public static final Timer WRITE_LOCK_WAIT = timer("write_lock_wait", "time spent waiting for the state's write lock");
+    public static final Timer PUSH = timer("push", "pushes of a change to the backup");
+    public static final Gauge REPLICATION_LAG = gauge("replication_lag", "versions the backup is behind the primary");
+    // backup
+    public static final Counter PUSHES_RECEIVED = counter("pushes_received", "changes pushed to us by the primary");
+    public static final Timer GET = timer("get", "gets served to players refreshing their state");
+    // everyone
+    public static final Timer PING = timer("ping", "pings of a neighbour that answered");
+    public static final Counter PING_FAILURES = counter("ping_failures", "pings of a neighbour that did not answer");
+    public static final Counter CRASHES_REPORTED = counter("crashes_reported", "players reported to the tracker as crashed");
+    public static final Counter FAILOVERS = counter("failovers", "times the backup took over from a crashed primary");
+    // tracker
+    public static final Timer REGISTER = timer("register", "players registering with the tracker");
+    public static final Counter UNREGISTER = counter("unregister", "players removed from the tracker");
+    public static final Gauge TRACKER_PLAYERS = gauge("tracker_players", "players the tracker knows of, over all shards");
+
+    private static HttpServer server;
+
+    private abstract static class Metric {
+        final String name;
+        final String help;
+
+        Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        abstract void write(StringBuilder b);
+    }
+
+    public interface TimerMXBean {
+        long getCount();
+        double getMeanMs();
+        double getP50Ms();
+        double getP99Ms();
+        double getP999Ms();
+        double getMaxMs();
+    }
+
+    public interface CounterMXBean {
+        long getCount();
+    }
+
+    public interface GaugeMXBean {
+        long getValue();
+    }
+
+    /**
+     * Timer keeps a Histogram of durations since the node started.
+     */
+    public static class Timer extends Metric implements TimerMXBean {
+        private final Histogram histogram = new Histogram();
+
+        Timer(String name, String help) {
+            super(name, help);
+        }
+
+        public void record(long nanos) {
+            histogram.record(nanos);
+        }
+
+        // since records the time passed since `start`, a System.nanoTime()
+        public void since(long start) {
+            histogram.record(System.nanoTime() - start);
+        }
+
+        public long getCount() {
+            return histogram.count();
+        }
+
+        public double getMeanMs() {
+            return histogram.mean() / 1e6;
+        }
+
+        public double getP50Ms() {
+            return histogram.percentile(0.5) / 1e6;
+        }
+
+        public double getP99Ms() {
+            return histogram.percentile(0.99) / 1e6;
+        }
+
+        public double getP999Ms() {
+            return histogram.percentile(0.999) / 1e6;
+        }
+
+        public double getMaxMs() {
+            return histogram.max() / 1e6;
+        }
+
+        @Override
+        void write(StringBuilder b) {
+            String n = "maze_" + name + "_seconds";
+            b.append("# HELP ").append(n).append(' ').append(help).append('\n');
+            b.append("# TYPE ").append(n).append(" summary\n");
+            for (double q : new double[]{0.5, 0.99, 0.999}) {
+                b.append(n).append("{quantile=\"").append(q).append("\"} ").append(seconds(histogram.percentile(q))).append('\n');
+            }
+            b.append(n).append("_count ").append(histogram.count()).append('\n');
+            b.append(n).append("_sum ").append(seconds(histogram.sum())).append('\n');
+        }
+    }
+
+    public static class Counter extends Metric implements CounterMXBean {
+        private final LongAdder count = new LongAdder();
+
+        Counter(String name, String help) {
+            super(name, help);
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        void write(StringBuilder b) {
+            String n = "maze_" + name + "_total";
+            b.append("# HELP ").append(n).append(' ').append(help).append('\n');
+            b.append("# TYPE ").append(n).append(" counter\n");
+            b.append(n).append(' ').append(count.sum()).append('\n');
+        }
+    }
+
+    public static class Gauge extends Metric implements GaugeMXBean {
+        private final AtomicLong value = new AtomicLong();
+
+        Gauge(String name, String help) {
+            super(name, help);
+        }
+
+        public void set(long v) {
+            value.set(v);
+        }
+
+        public long getValue() {
+            return value.get();
+        }
+
+        @Override
+        void write(StringBuilder b) {
+            String n = "maze_" + name;
+            b.append("# HELP ").append(n).append(' ').append(help).append('\n');
+            b.append("# TYPE ").append(n).append(" gauge\n");
+            b.append(n).append(' ').append(value.get()).append('\n');
+        }
+    }
+
+    private static Timer timer(String name, String help) {
+        return register(new Timer(name, help), "Timer");
+    }
+
+    private static Counter counter(String name, String help) {
+        return register(new Counter(name, help), "Counter");
+    }
+
+    private static Gauge gauge(String name, String help) {
+        return register(new Gauge(name, help), "Gauge");
+    }
+
+    private static <M extends Metric> M register(M metric, String type) {
+        all.add(metric);
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            mbs.registerMBean(metric, new ObjectName("maze:type=" + type + ",name=" + metric.name));
+        } catch (Exception e) {
+            System.out.println("cannot register metric " + metric.name + ": " + e.getMessage());
+        }
+        return metric;
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    // scrape returns every metric as plain text
+    public static String scrape() {
+        StringBuilder b = new StringBuilder();
+        for (Metric m : all) {
+            m.write(b);
+        }
+        return b.toString();
+    }
+
+    /**
+     * serve starts answering GET /metrics on `port`, once per JVM. A port of 0 leaves it off.
+     */
+    public static synchronized void serve(int port) {
+        if (port <= 0 || server != null) return;
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.createContext("/trace", exchange -> {
+                StringWriter text = new StringWriter();
+                Trace.dump(new PrintWriter(text));
+                byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+            System.out.println("Metrics on http://localhost:" + port + "/metrics");
+        } catch (IOException e) {
+            System.out.println("cannot serve metrics on port " + port + ": " + e.getMessage());
+        }
+    }
+}
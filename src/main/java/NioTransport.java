@@ -0,0 +1,495 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.ConnectException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * NioTransport carries Player and TrackerRMI calls over plain TCP instead of RMI.
+ *
+ * One selector thread does all socket IO of the node, for the objects it exports as well as
+ * for its outbound calls. Every message is a length prefixed frame
+ *     int length | long id | byte kind | payload
+ * and a connection carries any number of calls at once, matched by id.
+ * Requests are run on a worker pool since handlers call other nodes themselves (e.g. move -> push).
+ *
+ * There is no registry: the tracker listens directly on its port and players on an ephemeral one.
+ * References handed out are dynamic proxies over a serializable Ref (host, port, key).
+ * IO failures and timeouts surface as RemoteException, like they do with RMI.
+ */
+public class NioTransport extends Transport {
+    private static final byte REQUEST = 0;
+    private static final byte REPLY = 1;
+    private static final byte ERROR = 2;
+    private static final int HEADER = 4 + 8 + 1;
+    private static final int MAX_FRAME = 64 * 1024 * 1024;
+
+    private final String host;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ExecutorService workers;
+    private final AtomicLong ids = new AtomicLong();
+
+    // objects exported by this node, by key
+    private final Map<String, Object> exported = new ConcurrentHashMap<>();
+    // the remote interface each of them is exported as, the only methods peers may call
+    private final Map<String, Class<?>> interfaces = new ConcurrentHashMap<>();
+    // outbound connections, by host:port
+    private final Map<String, Conn> outbound = new ConcurrentHashMap<>();
+    // port the players of this node are exported on, 0 until the first export
+    private int playerPort;
+
+    public NioTransport() {
+        try {
+            this.host = InetAddress.getLocalHost().getHostAddress();
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot start nio transport", e);
+        }
+        this.workers = Threads.perTask("nio-worker");
+        // not a daemon, it keeps the tracker process alive like RMI does
+        Thread loop = new Thread(this::loop, "nio-selector");
+        loop.start();
+    }
+
+    @Override
+    public synchronized Player export(Player player, String name) throws RemoteException {
+        if (playerPort == 0) {
+            playerPort = listen(0);
+        }
+        String key = "player/" + name;
+        exported.put(key, player);
+        interfaces.put(key, Player.class);
+        return (Player) proxy(Player.class, new Ref(host, playerPort, key));
+    }
+
+    @Override
+    public TrackerRMI exportTracker(TrackerRMI tracker, int port, String name) throws RemoteException {
+        listen(port);
+        exported.put(name, tracker);
+        interfaces.put(name, TrackerRMI.class);
+        return (TrackerRMI) proxy(TrackerRMI.class, new Ref(host, port, name));
+    }
+
+    @Override
+    public TrackerRMI lookupTracker(String host, int port, String name) {
+        return (TrackerRMI) proxy(TrackerRMI.class, new Ref(host, port, name));
+    }
+
+    private static Object proxy(Class<?> type, Ref ref) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, ref);
+    }
+
+    private int listen(int port) throws RemoteException {
+        try {
+            ServerSocketChannel server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+            onLoop(() -> {
+                try {
+                    server.register(selector, SelectionKey.OP_ACCEPT);
+                } catch (IOException e) {
+                    System.out.println(e.getMessage());
+                }
+            });
+            return server.socket().getLocalPort();
+        } catch (IOException e) {
+            throw new RemoteException("cannot listen on port " + port, e);
+        }
+    }
+
+    /**
+     * call sends one request and waits for its reply.
+     */
+    Object call(Ref ref, Method method, Object[] args) throws Throwable {
+        Conn conn = connect(ref.host, ref.port);
+        long id = ids.incrementAndGet();
+        CompletableFuture<Frame> reply = new CompletableFuture<>();
+        conn.pending.put(id, reply);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeUTF(ref.key);
+            out.writeUTF(method.getName());
+            out.writeObject(args == null ? new Object[0] : args);
+        }
+        conn.send(id, REQUEST, bytes.toByteArray());
+
+        Frame frame;
+        try {
+            frame = reply.get(Config.NIO_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            conn.pending.remove(id);
+            throw new RemoteException(method.getName() + " to " + ref + " timed out");
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+
+        Object result = decode(frame.payload);
+        if (frame.kind == ERROR) {
+            throw (Throwable) result;
+        }
+        return result;
+    }
+
+    private Conn connect(String host, int port) throws RemoteException {
+        String addr = host + ":" + port;
+        Conn conn = outbound.get(addr);
+        if (conn != null && conn.open) {
+            return conn;
+        }
+
+        try {
+            SocketChannel ch = SocketChannel.open();
+            ch.socket().connect(new InetSocketAddress(host, port), Config.NIO_TIMEOUT_MS);
+            ch.socket().setTcpNoDelay(true);
+            ch.configureBlocking(false);
+            conn = new Conn(ch, addr);
+        } catch (IOException e) {
+            throw new ConnectException("cannot reach " + addr, e);
+        }
+
+        // another thread may have connected in the meantime, keep one connection per address
+        Conn existing = outbound.putIfAbsent(addr, conn);
+        if (existing != null && existing.open) {
+            conn.close();
+            return existing;
+        }
+        outbound.put(addr, conn);
+        register(conn);
+        return conn;
+    }
+
+    private void register(Conn conn) {
+        onLoop(() -> {
+            try {
+                conn.key = conn.ch.register(selector, SelectionKey.OP_READ, conn);
+                conn.updateInterest();
+            } catch (IOException e) {
+                conn.close();
+            }
+        });
+    }
+
+    private void onLoop(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void loop() {
+        while (true) {
+            try {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+
+                    if (key.isAcceptable()) {
+                        SocketChannel ch = ((ServerSocketChannel) key.channel()).accept();
+                        if (ch == null) continue;
+                        ch.configureBlocking(false);
+                        ch.socket().setTcpNoDelay(true);
+                        Conn conn = new Conn(ch, ch.getRemoteAddress().toString());
+                        conn.key = ch.register(selector, SelectionKey.OP_READ, conn);
+                        continue;
+                    }
+
+                    Conn conn = (Conn) key.attachment();
+                    if (key.isReadable()) {
+                        conn.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        conn.flush();
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("nio selector: " + e.getMessage());
+            }
+        }
+    }
+
+    private void dispatch(Conn conn, long id, byte[] payload) {
+        byte kind = REPLY;
+        Object result;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            String key = in.readUTF();
+            String methodName = in.readUTF();
+            Object[] args = (Object[]) in.readObject();
+            Object target = exported.get(key);
+            Class<?> type = interfaces.get(key);
+            if (target == null || type == null) {
+                throw new NoSuchObjectException(key + " is not exported");
+            }
+            result = find(type, methodName, args.length).invoke(target, args);
+        } catch (InvocationTargetException e) {
+            kind = ERROR;
+            result = e.getCause();
+            if (result instanceof RemoteException) {
+                // like RMI, so that the caller does not take the callee's own failed call for its own
+                result = new ServerException("RemoteException occurred in server thread", (RemoteException) result);
+            }
+        } catch (Throwable e) {
+            kind = ERROR;
+            result = e;
+        }
+
+        try {
+            conn.send(id, kind, encode(result));
+        } catch (IOException e) {
+            System.out.println("cannot reply to " + conn.addr + ": " + e.getMessage());
+        }
+    }
+
+    private static final Map<String, Method> methods = new ConcurrentHashMap<>();
+
+    // the remote interfaces have no overloads, name and arity identify a method. `type` is one of them
+    private static Method find(Class<?> type, String name, int arity) throws NoSuchMethodException {
+        String id = type.getName() + "#" + name + "/" + arity;
+        Method found = methods.get(id);
+        if (found != null) return found;
+        for (Method m : type.getMethods()) {
+            if (m.getName().equals(name) && m.getParameterCount() == arity) {
+                methods.put(id, m);
+                return m;
+            }
+        }
+        throw new NoSuchMethodException(id);
+    }
+
+    private static byte[] encode(Object o) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(o);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object decode(byte[] payload) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return in.readObject();
+        }
+    }
+
+    private static class Frame {
+        final byte kind;
+        final byte[] payload;
+
+        Frame(byte kind, byte[] payload) {
+            this.kind = kind;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Conn is one TCP connection. Only the selector thread reads and writes the channel,
+     * other threads queue frames through send.
+     */
+    private class Conn {
+        final SocketChannel ch;
+        final String addr;
+        final Map<Long, CompletableFuture<Frame>> pending = new ConcurrentHashMap<>();
+        final Queue<ByteBuffer> writes = new ConcurrentLinkedQueue<>();
+        ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        SelectionKey key;
+        volatile boolean open = true;
+
+        Conn(SocketChannel ch, String addr) {
+            this.ch = ch;
+            this.addr = addr;
+        }
+
+        void send(long id, byte kind, byte[] payload) throws IOException {
+            if (!open) {
+                throw new ConnectException("connection to " + addr + " is closed");
+            }
+            ByteBuffer frame = ByteBuffer.allocate(HEADER + payload.length);
+            frame.putInt(8 + 1 + payload.length).putLong(id).put(kind).put(payload);
+            frame.flip();
+            writes.add(frame);
+            onLoop(this::updateInterest);
+        }
+
+        void updateInterest() {
+            if (key == null || !key.isValid()) return;
+            key.interestOps(writes.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        void flush() {
+            try {
+                ByteBuffer head;
+                while ((head = writes.peek()) != null) {
+                    ch.write(head);
+                    if (head.hasRemaining()) return;
+                    writes.poll();
+                }
+                updateInterest();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void read() {
+            try {
+                if (ch.read(in) < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+
+            in.flip();
+            while (in.remaining() >= 4) {
+                int length = in.getInt(in.position());
+                if (length < 9 || length > MAX_FRAME) {
+                    System.out.println("bad frame from " + addr);
+                    close();
+                    return;
+                }
+                if (in.remaining() < 4 + length) {
+                    if (in.capacity() < 4 + length) {
+                        ByteBuffer bigger = ByteBuffer.allocate(4 + length);
+                        bigger.put(in);
+                        in = bigger;
+                        return;
+                    }
+                    break;
+                }
+                in.getInt();
+                long id = in.getLong();
+                byte kind = in.get();
+                byte[] payload = new byte[length - 9];
+                in.get(payload);
+                handle(id, kind, payload);
+            }
+            in.compact();
+        }
+
+        private void handle(long id, byte kind, byte[] payload) {
+            if (kind == REQUEST) {
+                workers.execute(() -> dispatch(this, id, payload));
+                return;
+            }
+            CompletableFuture<Frame> reply = pending.remove(id);
+            if (reply != null) {
+                reply.complete(new Frame(kind, payload));
+            }
+        }
+
+        void close() {
+            open = false;
+            outbound.remove(addr, this);
+            if (key != null) key.cancel();
+            try {
+                ch.close();
+            } catch (IOException e) {
+                // already closed
+            }
+            for (CompletableFuture<Frame> reply : pending.values()) {
+                reply.completeExceptionally(new ConnectException("connection to " + addr + " closed"));
+            }
+            pending.clear();
+        }
+    }
+
+    /**
+     * Ref is what travels in State.playerRefs and Bootstrap when the nio transport is used.
+     * Calls on the proxy are sent through the local node's NioTransport.
+     */
+    public static class Ref implements InvocationHandler, Serializable {
+        private static final long serialVersionUID = Wire.FORMAT;
+
+        final String host;
+        final int port;
+        final String key;
+
+        Ref(String host, int port, String key) {
+            this.host = host;
+            this.port = port;
+            this.key = key;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return args[0] != null && Proxy.isProxyClass(args[0].getClass())
+                                && equals(Proxy.getInvocationHandler(args[0]));
+                    case "hashCode":
+                        return hashCode();
+                    default:
+                        return toString();
+                }
+            }
+
+            Transport transport = Transport.get();
+            if (!(transport instanceof NioTransport)) {
+                throw new RemoteException("nio reference used without -Dmaze.transport=nio");
+            }
+            try {
+                return ((NioTransport) transport).call(this, method, args);
+            } catch (RemoteException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                // like RMI, checked exceptions the method does not declare arrive wrapped
+                for (Class<?> declared : method.getExceptionTypes()) {
+                    if (declared.isInstance(e)) throw e;
+                }
+                throw new RemoteException("remote call failed", e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Ref)) return false;
+            Ref other = (Ref) o;
+            return port == other.port && host.equals(other.host) && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return (host.hashCode() * 31 + port) * 31 + key.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + "@" + host + ":" + port;
+        }
+    }
+}
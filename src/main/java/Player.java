@@ -1,5 +1,6 @@
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 /**
  * Player is the remote object that encapsulates
@@ -7,11 +8,27 @@ import java.rmi.RemoteException;
  * 2. standard player behaviours
  */
 public interface Player extends Remote {
-    // server behaviour
+    // server behaviour. a state of the receiver's game and no newer than its copy is dropped
     void push(State latest) throws RemoteException, Exception;
 
+    /**
+     * pushDelta applies the changes since the receiver's version.
+     * Returns false if the receiver has a version gap and needs a full `push` instead.
+     * A receiver already at the delta's version of the same game, or past it, drops it and returns true.
+     */
+    boolean pushDelta(StateDelta delta) throws RemoteException, Exception;
+
     void ping() throws RemoteException;
 
+    /**
+     * gossip is a membership probe (maze.gossip). The caller's rumors about the members come along,
+     * and the answer carries ours.
+     */
+    List<Rumor> gossip(String caller, List<Rumor> rumors) throws RemoteException, Exception;
+
+    // probe asks us to probe `target` for a caller that could not reach it. It throws if we cannot either
+    List<Rumor> probe(String caller, Player target, List<Rumor> rumors) throws RemoteException, Exception;
+
     // standard player behaviour
 
     /**
@@ -21,12 +38,40 @@ public interface Player extends Remote {
      */
     State register(Player p, String caller, int idx) throws RemoteException, Exception;
 
+    /**
+     * registerAt is register into a given shard, processed only by that shard's primary.
+     * A player handed off from a neighbouring shard joins at `at`, which must be free, and keeps its score.
+     * A new player passes a null `at` and gets a random cell.
+     */
+    State registerAt(Player p, String caller, int idx, int shard, Position at, int score) throws RemoteException, Exception;
+
     State move(Move move, String caller) throws RemoteException, Exception;
 
+    /**
+     * moveBatch is processed only by the primary server. It applies the moves in order
+     * and replicates the result to the backup once.
+     */
+    State moveBatch(List<Move> moves, String caller) throws RemoteException, Exception;
+
     State get(String name) throws RemoteException, Exception;
 
+    /**
+     * getSince is get for a caller holding the State at `version` of game `epoch`. It returns nothing
+     * if that is still current, else the changes since then, or the whole State if those are not at hand.
+     */
+    StateUpdate getSince(String name, long epoch, int version) throws RemoteException, Exception;
+
+    /**
+     * subscribe is processed only by the backup. From then on it pushes its state to `p`,
+     * starting from `version` of game `epoch`, at most once every `intervalMs`, with the changes in between merged.
+     */
+    void subscribe(Player p, String caller, long epoch, int version, int intervalMs) throws RemoteException, Exception;
+
     State leave(String leaver) throws RemoteException, Exception;
 
+    // leaveShard is leave for a player handed off to another shard. Only the primary of `shard` takes it.
+    State leaveShard(String leaver, int shard) throws RemoteException, Exception;
+
     void setPrimary(String name) throws Exception;
 
     State shadowMove(Move move, String caller) throws RemoteException, Exception;
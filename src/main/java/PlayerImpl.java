@@ -1,32 +1,124 @@
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
+import java.io.ObjectOutput;
 import java.io.Serializable;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.server.UnicastRemoteObject;
-import java.time.Duration;
-import java.time.Instant;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 
-public class PlayerImpl extends UnicastRemoteObject implements Player, Serializable {
+public class PlayerImpl implements Player, Serializable {
     public State state;
 
+    // stub is how other nodes reach this player, it is what goes into State.playerRefs
+    private final Player stub;
+
     private int N;
     private int K;
     private final String name;
     private PlayerType playerType;
     private TrackerInfo trackerInfo;
-    private ReadWriteLock rwLock = new ReentrantReadWriteLock(true);
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    // how the maze is split, and the shard this player is in
+    private ShardMap shards;
+    private int shard;
+    private ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock(true);
+    // held while moving to another shard, so that a promotion does not land halfway through
+    private ReentrantLock handoffLock = new ReentrantLock();
+    // the state at its latest version, copied once per version for reads and replies that take no lock
+    private final AtomicReference<State> published = new AtomicReference<>();
+    // latest deltas received as a backup, guarded by rwLock like the state
+    private final DeltaLog deltaLog = new DeltaLog(Config.DELTA_LOG_SIZE);
+    // as a backup, pushes our state to the normal players that subscribed
+    private final Publisher publisher = new Publisher(this);
+    // as a normal player, the backup we get our updates from
+    private Player subscribedTo;
+    private final ScheduledExecutorService scheduler = Threads.scheduler("scheduler");
+    // tells from what we have heard of our neighbours whether they are still up
+    private final FailureDetector detector = new FailureDetector(Config.FD_PHI, Config.FD_IDLE_MS);
+    // pings of idle links run here, so that a slow neighbour does not hold up the scheduler
+    private final ExecutorService pinger = Threads.bounded("pinger", 2);
+    // neighbours with a ping in flight
+    private final Set<String> pinging = ConcurrentHashMap.newKeySet();
+    // neighbours checked on the last and on this round, only touched by the scheduler thread
+    private Set<String> watched = new HashSet<>();
+    private Set<String> watching = new HashSet<>();
+
+    // moves typed while a request to the primary is in flight. they are sent together as one batch.
+    private final ConcurrentLinkedQueue<Move> pendingMoves = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+    private final ExecutorService mover = Threads.single("mover");
+    private Runnable onUpdate = () -> {};
+
+    // streams writes to the backup off the write lock, null unless async replication is on
+    private final Replicator replicator;
+    // applies the primary's writes once per tick on one thread, null unless maze.tick is set
+    private final TickEngine engine;
+    // finds crashed players by gossip instead of the ping ring, null unless maze.gossip is on
+    private final Membership membership;
+    // keeps our changes on disk while we are primary, null unless maze.journal.dir is set
+    private final Journal journal;
+    // version the backup got from our last push that went through, for the replication lag
+    private int backupVersion;
+    // set once starting a recording failed, so that we do not try again on every move
+    private boolean cannotRecord;
+    // scores of a recovered game, handed back to its players when they join again
+    private final Map<String, Integer> recoveredScores = new ConcurrentHashMap<>();
 
     public PlayerImpl(String name) throws RemoteException {
-        super();
         this.name = name;
+        this.replicator = Config.ASYNC_REPLICATION ? new Replicator(this) : null;
+        this.engine = Config.TICK_MS > 0 ? new TickEngine(this, Config.TICK_MS, Config.TICK_QUEUE) : null;
+        this.membership = Config.GOSSIP ? new Membership(name, Config.GOSSIP_PERIOD_MS, this::memberDead) : null;
+        Journal journal = null;
+        if (Config.JOURNAL_DIR != null) {
+            try {
+                journal = new Journal(Config.JOURNAL_DIR, name, this);
+            } catch (Exception e) {
+                System.out.println("cannot journal to " + Config.JOURNAL_DIR + ": " + e.getMessage());
+            }
+        }
+        this.journal = journal;
+        this.stub = Transport.get().export(this, name);
+    }
+
+    public Player getStub() {
+        return stub;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    PlayerType getPlayerType() {
+        return playerType;
+    }
+
+    /**
+     * halt stops the threads of this player, as killing its process would. Only the Simulator
+     * uses it, after taking the player's node down.
+     */
+    void halt() {
+        scheduler.shutdownNow();
+        pinger.shutdownNow();
+        mover.shutdownNow();
+        if (engine != null) {
+            engine.stop();
+        }
     }
 
     /**
@@ -37,60 +129,163 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
         this.N = bs.N;
         this.K = bs.K;
         this.trackerInfo = bs.trackerInfo;
-        // iterate over player list to register with primary
-        // since players contact tracker for (1) first joining and (2) crash recovery
-        // the primary could have left. Iterating over player list is the safest method.
-        // while slow, only THIS player experiences the slowness.
-        for (int i = 0; i < bs.players.size(); i++) {
-            try {
-                this.state = bs.players.get(i).register(this, name, i);
-                break;
-            } catch (Exception e) {
-                System.out.println(e.getMessage());
-            }
-        }
+        this.shards = bs.shards;
+        this.shard = bs.shard;
+        this.state = registerWith(bs.players, shard, null, 0);
 
         if (this.state == null) {
             return false;
         }
 
-        // Issue: O(n) time complexity
         reIdentifySelf();
 
         System.out.println(name + " is a " + playerType);
+        ensureSubscribed();
         startBackgroundPing();
         return true;
     }
 
+    // iterate over player list to register with primary
+    // since players contact tracker for (1) first joining and (2) crash recovery
+    // the primary could have left. Iterating over player list is the safest method.
+    // while slow, only THIS player experiences the slowness.
+    private State registerWith(Vector<Player> players, int shard, Position at, int score) {
+        for (int i = 0; i < players.size(); i++) {
+            try {
+                if (shards.count() == 1) {
+                    return players.get(i).register(stub, name, i);
+                }
+                // a player listed in two shards while it moves must not take us into the wrong one
+                return players.get(i).registerAt(stub, name, i, shard, at, score);
+            } catch (Exception e) {
+                System.out.println(e.getMessage());
+            }
+        }
+        return null;
+    }
+
     // ping does nothing. if its not contactable, remote exception is thrown
     @Override
     public void ping() {}
 
+    @Override
+    public List<Rumor> gossip(String caller, List<Rumor> rumors) throws Exception {
+        if (membership == null) {
+            throw new Exception("gossip is off on " + name);
+        }
+        detector.heartbeat(caller);
+        return membership.gossip(caller, rumors);
+    }
+
+    @Override
+    public List<Rumor> probe(String caller, Player target, List<Rumor> rumors) throws Exception {
+        if (membership == null) {
+            throw new Exception("gossip is off on " + name);
+        }
+        detector.heartbeat(caller);
+        return membership.probeFor(caller, target, rumors);
+    }
+
     @Override
     public void push(State latest) throws Exception {
         if (playerType == PlayerType.Primary) {
-            throw new Exception("cannot push to primary " + name);
+            // whoever pushes takes itself for our primary, but we have taken over from it
+            throw new DeposedException("cannot push to primary " + name);
+        }
+
+        if (!ofMyShard(latest)) {
+            throw new Exception("state of shard " + latest.getShard() + " pushed to " + name + " in shard " + shard);
         }
 
         try {
-            System.out.println("Received push COUNT: " + latest.count);
-            rwLock.writeLock().lock();
+            Trace.event(Trace.Kind.PUSH_RECEIVED, name, null, latest.count);
+            lockWrite();
+            if (state != null && ofMyShard(state) && latest.getEpoch() == state.getEpoch() && latest.count <= state.count) {
+                // we are ahead already, e.g. by the reply to our own move
+                return;
+            }
             this.state = latest;
+            deltaLog.clear();
             if (playerType == PlayerType.Normal) {
                 reIdentifySelf();
             }
+            publish();
         } finally {
             rwLock.writeLock().unlock();
         }
+        updated();
+    }
+
+    @Override
+    public boolean pushDelta(StateDelta delta) throws Exception {
+        if (playerType == PlayerType.Primary) {
+            throw new DeposedException("cannot push to primary " + name);
+        }
+
+        try {
+            lockWrite();
+            if (state != null && ofMyShard(state) && delta.epoch == state.getEpoch() && delta.count <= state.count) {
+                // nothing new to us, and no reason to send us the whole state either
+                return true;
+            }
+            if (state == null || !state.apply(delta)) {
+                System.out.println("Version gap at COUNT: " + (state == null ? -1 : state.count) + ", asking for snapshot");
+                return false;
+            }
+            Trace.event(Trace.Kind.PUSH_RECEIVED, name, null, delta.count);
+            deltaLog.add(delta);
+            if (playerType == PlayerType.Normal) {
+                reIdentifySelf();
+            }
+            publish();
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+        updated();
+        return true;
+    }
+
+    // updated passes a pushed change on to our subscribers, if we are the backup, and to the screen
+    private void updated() {
+        Metrics.PUSHES_RECEIVED.increment();
+        if (playerType == PlayerType.Backup) {
+            // only the primary pushes to the backup
+            heardAt(0);
+            publisher.changed();
+        }
+        onUpdate.run();
+    }
+
+    @Override
+    public void subscribe(Player p, String caller, long epoch, int version, int intervalMs) throws Exception {
+        if (playerType != PlayerType.Backup) {
+            throw new Exception(name + " is not a backup, cannot take subscribers");
+        }
+        System.out.println(caller + " subscribed to " + name);
+        detector.heartbeat(caller);
+        publisher.subscribe(caller, p, epoch, version, intervalMs);
     }
 
     @Override
     public State register(Player p, String caller, int idx) throws Exception {
+        return join(p, caller, idx, shard, null, 0);
+    }
+
+    @Override
+    public State registerAt(Player p, String caller, int idx, int shard, Position at, int score) throws Exception {
+        return join(p, caller, idx, shard, at, score);
+    }
+
+    private State join(Player p, String caller, int idx, int shard, Position at, int score) throws Exception {
         if (caller.equals(name)) {
             switch (idx) {
                 case 0:
                     // primary register itself
-                    return new State(this, name, this.N, this.K);
+                    State created = new State(stub, name, this.N, shards.treasuresPerShard(this.K), shards, shard, at, score);
+                    if (Config.JOURNAL_DIR != null) {
+                        resume(created, at == null);
+                    }
+                    return created;
                 default:
                     // invalid state
                     throw new Exception("cannot register with self");
@@ -102,14 +297,23 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
             throw new Exception(name + " not primary");
         }
 
-        try {
-            rwLock.writeLock().lock();
-            state.addPlayer(p, caller);
-            pushToBackup();
-            return state;
-        } finally {
-            rwLock.writeLock().unlock();
-        }
+        write(() -> {
+            if (shard != this.shard) {
+                throw new Exception(name + " is not in shard " + shard);
+            }
+            if (at == null) {
+                Integer recovered = recoveredScores.remove(caller);
+                state.addPlayer(p, caller, recovered == null ? 0 : recovered);
+            } else {
+                // a stale entry from an earlier visit whose leave did not get through
+                if (state.indexOf(caller) >= 0) {
+                    state.removePlayer(caller);
+                }
+                state.addPlayerAt(p, caller, at.x, at.y, score);
+            }
+            return null;
+        });
+        return snapshot();
     }
 
     @Override
@@ -117,23 +321,32 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
         // To enable other players to move while primary is retiring
         // player in action could still in backup or already be set to primary
         if (playerType == PlayerType.Backup || playerType == PlayerType.Primary) {
-            System.out.println("Shadowing in progress");
+            Trace.event(Trace.Kind.MOVE_SHADOWED, name, caller, 0);
+            if (playerType == PlayerType.Primary) {
+                write(() -> {
+                    state.move(move, caller);
+                    return null;
+                });
+                return snapshot();
+            }
             try {
-                rwLock.writeLock().lock();
+                lockWrite();
                 state.move(move, caller);
-                if (playerType == PlayerType.Primary) {
-                    pushToBackup();
-                }
-                return this.state;
             } finally {
                 rwLock.writeLock().unlock();
             }
+            return snapshot();
         }
         return null;
     }
 
     @Override
     public State move(Move move, String caller) throws Exception {
+        return moveBatch(Collections.singletonList(move), caller);
+    }
+
+    @Override
+    public State moveBatch(List<Move> moves, String caller) throws Exception {
         if (playerType == PlayerType.Retiree) {
             throw new RetiringException(name + " retiring");
         }
@@ -146,20 +359,29 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
             throw new Exception("cannot query from self");
         }
 
-        Instant start = Instant.now();
+        if (state.indexOf(caller) < 0) {
+            // e.g. a player of the shard we just left
+            throw new Exception(caller + " is not in " + name + "'s game");
+        }
+        detector.heartbeat(caller);
 
-        System.out.println(caller + " asked to make " + move);
+        long started = System.nanoTime();
+        if (replicator != null) {
+            replicator.admit();
+        }
 
-        try {
-            rwLock.writeLock().lock();
-            state.move(move, caller);
-            Duration timeElapsed = Duration.between(start, Instant.now());
-            System.out.println("Time taken for 1 write: "+ (timeElapsed.toMillis()) +" ms\n");
-            pushToBackup();
-            return this.state;
-        } finally {
-            rwLock.writeLock().unlock();
+        int version = write(() -> {
+            for (Move move : moves) {
+                state.move(move, caller);
+            }
+            return state.count;
+        });
+
+        if (replicator != null && Config.waitForReplicationAck()) {
+            replicator.awaitAck(version);
         }
+        Metrics.MOVE.since(started);
+        return snapshot();
     }
 
     @Override
@@ -171,10 +393,56 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
         if (caller.equals(this.name)) {
             throw new Exception("cannot query from self");
         }
+        detector.heartbeat(caller);
 
+        long start = System.nanoTime();
+        State latest = snapshot();
+        Metrics.GET.since(start);
+        return latest;
+    }
+
+    @Override
+    public StateUpdate getSince(String caller, long epoch, int version) throws Exception {
+        if (playerType == PlayerType.Primary) {
+            throw new Exception("cannot fetch from primary " + name);
+        }
+
+        if (caller.equals(this.name)) {
+            throw new Exception("cannot query from self");
+        }
+        detector.heartbeat(caller);
+
+        long start = System.nanoTime();
+        StateUpdate update = updateSince(epoch, version);
+        Metrics.GET.since(start);
+        return update;
+    }
+
+    // updateSince answers getSince and feeds the publisher. a version of another game gets the whole state
+    StateUpdate updateSince(long epoch, int version) {
+        try {
+            rwLock.readLock().lock();
+            if (epoch == state.getEpoch() && version == state.count) {
+                return StateUpdate.notModified();
+            }
+            // past this many changes the whole state is the smaller answer
+            int maxOps = state.playerCount() + state.treasureCount();
+            StateDelta delta = deltaLog.since(state.getShard(), epoch, version, state.count, maxOps);
+            return delta != null ? StateUpdate.changes(delta) : StateUpdate.snapshot(snapshot());
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    boolean isBackup() {
+        return playerType == PlayerType.Backup;
+    }
+
+    // isAt tells whether our copy of the state is at `version` of game `epoch`
+    boolean isAt(long epoch, int version) {
         try {
             rwLock.readLock().lock();
-            return this.state;
+            return state.getEpoch() == epoch && state.count == version;
         } finally {
             rwLock.readLock().unlock();
         }
@@ -186,35 +454,52 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
             throw new Exception(name + " is not a primary server, cannot process `leave` request");
         }
 
-        try {
-            rwLock.writeLock().lock();
+        write(() -> {
             state.removePlayer(leaver);
-            pushToBackup();
             System.out.println("Removed " + leaver + " from state");
-            return this.state;
-        } finally {
-            rwLock.writeLock().unlock();
-        }
+            return null;
+        });
+        return snapshot();
     }
 
     @Override
-    public void setPrimary(String leaver) throws Exception {
-        if (playerType != PlayerType.Backup) {
-            throw new Exception(name + " is not a backup");
-        }
+    public State leaveShard(String leaver, int shard) throws Exception {
+        return write(() -> {
+            if (shard != this.shard) {
+                throw new Exception(name + " is not in shard " + shard);
+            }
+            return leave(leaver);
+        });
+    }
 
-        playerType = PlayerType.Primary;
-        System.out.println(name + " is now a primary");
+    @Override
+    public void setPrimary(String leaver) throws Exception {
         try {
-            leave(leaver);
-            reIdentifySelf();
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
+            handoffLock.lock();
+            if (playerType != PlayerType.Backup) {
+                throw new Exception(name + " is not a backup");
+            }
+            // we may have moved to another shard since the leaver pushed to us
+            if (state.indexOf(leaver) != 0) {
+                throw new Exception(leaver + " is not " + name + "'s primary");
+            }
+
+            playerType = PlayerType.Primary;
+            System.out.println(name + " is now a primary");
+            try {
+                leave(leaver);
+                reIdentifySelf();
+            } catch (Exception e) {
+                System.out.println(e.getMessage());
+            }
+        } finally {
+            handoffLock.unlock();
         }
     }
 
 
     public void quit() {
+        awaitMoves();
         if (playerType == PlayerType.Primary) {
             try {
                 int i = getPlayerPos();
@@ -239,45 +524,289 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
         }
     }
 
+    /**
+     * sendMove queues the move and returns. Moves queued while a request is in flight
+     * are sent to the primary as one batch once it returns.
+     */
     public void sendMove(Move move) {
+        pendingMoves.add(move);
+        if (flushing.compareAndSet(false, true)) {
+            mover.execute(this::flushMoves);
+        }
+    }
+
+    // setOnUpdate sets what to run after a batch of moves went through, e.g. repaint the maze
+    public void setOnUpdate(Runnable onUpdate) {
+        this.onUpdate = onUpdate;
+    }
+
+    // awaitMoves blocks until every queued move has been sent
+    private void awaitMoves() {
+        try {
+            mover.submit(() -> {}).get();
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private void flushMoves() {
+        while (true) {
+            List<Move> batch = new ArrayList<>();
+            Move move;
+            while ((move = pendingMoves.poll()) != null) {
+                batch.add(move);
+            }
+
+            if (batch.isEmpty()) {
+                flushing.set(false);
+                // a move may have been queued before flushing was cleared, take it unless another flush did
+                if (pendingMoves.isEmpty() || !flushing.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+
+            sendMoves(batch);
+            onUpdate.run();
+        }
+    }
+
+    // sendMoves sends the moves in batches, handing the player off where a move crosses into another shard
+    private void sendMoves(List<Move> moves) {
+        if (shards == null || shards.count() == 1) {
+            sendBatch(moves);
+            return;
+        }
+
+        int from = 0;
+        while (from < moves.size()) {
+            int to = firstCrossing(moves, from);
+            if (to > from) {
+                sendBatch(new ArrayList<>(moves.subList(from, to)));
+            }
+            if (to == moves.size()) {
+                return;
+            }
+
+            // the moves before may have been blocked, check again from where we really are
+            Position target = step(moves.get(to), myPosition());
+            int targetShard = target == null ? -1 : shards.shardOf(target.x, target.y);
+            if (targetShard >= 0 && targetShard != shard) {
+                handoff(targetShard, target);
+            } else {
+                sendBatch(Collections.singletonList(moves.get(to)));
+            }
+            from = to + 1;
+        }
+    }
+
+    // firstCrossing returns the index of the first move leaving this shard, assuming the moves before succeed
+    private int firstCrossing(List<Move> moves, int from) {
+        Position pos = myPosition();
+        for (int i = from; i < moves.size() && pos != null; i++) {
+            Position next = step(moves.get(i), pos);
+            int nextShard = shards.shardOf(next.x, next.y);
+            if (nextShard >= 0 && nextShard != shard) {
+                return i;
+            }
+            if (nextShard == shard) {
+                pos = next;
+            }
+        }
+        return moves.size();
+    }
+
+    private Position myPosition() {
+        try {
+            rwLock.readLock().lock();
+            int i = state.indexOf(name);
+            return i < 0 ? null : new Position(state.xAt(i), state.yAt(i));
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    private static Position step(Move move, Position pos) {
+        if (pos == null) return null;
+        switch (move) {
+            case Up:
+                return new Position(pos.x, pos.y - 1);
+            case Down:
+                return new Position(pos.x, pos.y + 1);
+            case Right:
+                return new Position(pos.x + 1, pos.y);
+            default:
+                return new Position(pos.x - 1, pos.y);
+        }
+    }
+
+    /**
+     * handoff moves this player into the neighbouring shard at `at`.
+     * It first joins the new shard, then leaves the old one the way quit() does,
+     * so the player stays where it is if the cell is taken.
+     */
+    private void handoff(int target, Position at) {
+        try {
+            handoffLock.lock();
+            moveTo(target, at);
+        } finally {
+            handoffLock.unlock();
+        }
+    }
+
+    private void moveTo(int target, Position at) {
+        State old;
+        PlayerType oldType;
+        int score;
+        try {
+            rwLock.readLock().lock();
+            old = state;
+            oldType = playerType;
+            score = state.scoreAt(getPlayerPos());
+        } finally {
+            rwLock.readLock().unlock();
+        }
+
+        int oldShard = shard;
+        try {
+            TrackerRMI trackerRMIRef = Transport.get().lookupTracker(trackerInfo.host, trackerInfo.port, trackerInfo.name);
+            // we stay listed in the old shard until we are out of its game, so it never looks empty meanwhile
+            Bootstrap bs = trackerRMIRef.enterShard(stub, name, target);
+            // until we are in, we are still a member of the old shard
+            State joined = registerWith(bs.players, target, at, score);
+            if (joined == null) {
+                System.out.println(name + " cannot enter shard " + target + " at " + at.x + ", " + at.y);
+                trackerRMIRef.leaveShard(name, target);
+                return;
+            }
+
+            try {
+                lockWrite();
+                shard = target;
+                state = joined;
+                deltaLog.clear();
+                subscribedTo = null;
+                reIdentifySelf();
+            } finally {
+                rwLock.writeLock().unlock();
+            }
+            System.out.println(name + " handed off to shard " + target + " as " + playerType);
+            ensureSubscribed();
+            leaveGame(old, oldType, oldShard);
+            trackerRMIRef.leaveShard(name, oldShard);
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // leaveGame removes this player from the state of the shard it left
+    private void leaveGame(State old, PlayerType oldType, int oldShard) {
+        if (oldType == PlayerType.Primary) {
+            // same as quit: the backup takes over and removes us.
+            // a backup that has moved on as well is dropped and the next player brought up to date instead
+            int tries = 0;
+            while (old.playerRefs.size() > 1) {
+                try {
+                    Player backup = old.playerRefs.get(1);
+                    backup.push(old);
+                    backup.setPrimary(name);
+                    return;
+                } catch (Exception e) {
+                    System.out.println(e.getMessage());
+                }
+                // it may be in the middle of entering this shard, give it a moment before dropping it
+                if (++tries < 3) {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+                tries = 0;
+                old.removePlayer(old.nameAt(1));
+            }
+            return;
+        }
+
+        // the primary may be handing over itself, try again with whoever the tracker knows by then
+        Vector<Player> refs = old.playerRefs;
+        for (int attempt = 0; attempt < 3; attempt++) {
+            for (Player player : refs) {
+                if (player.equals(stub)) continue;
+                try {
+                    // the player may be a primary of the shard we just entered by now
+                    player.leaveShard(name, oldShard);
+                    return;
+                } catch (Exception e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+            try {
+                Thread.sleep(100);
+                refs = Transport.get().lookupTracker(trackerInfo.host, trackerInfo.port, trackerInfo.name).fetchShard(oldShard).players;
+            } catch (Exception e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void sendBatch(List<Move> moves) {
         if (this.playerType == PlayerType.Primary) {
-            System.out.println(name + " [primary] asked to Move " + move);
             try {
-                rwLock.writeLock().lock();
-                state.move(move, name);
-                pushToBackup();
+                if (replicator != null) {
+                    replicator.admit();
+                }
+                write(() -> {
+                    for (Move move : moves) {
+                        state.move(move, name);
+                    }
+                    return null;
+                });
             } catch (Exception e){
                 System.out.println(e.getMessage());
-            } finally {
-                rwLock.writeLock().unlock();
             }
             //state.pretty();
             return;
         }
 
+        List<Player> refs;
+        try {
+            rwLock.readLock().lock();
+            // a copy, a push may change the state while we are calling out
+            refs = new ArrayList<>(state.playerRefs);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+
         int i = 0;
-        for (Player player : state.playerRefs) {
+        for (Player player : refs) {
             State newState = null;
             try {
                 // increment at the beginning of loop. Need to -1 to get the correct position.
                 i += 1;
                 // needs to be assigned to a new variable to prevent deadlock if `this` is Backup
-                newState = player.move(move, name);
+                newState = player.moveBatch(moves, name);
             } catch (RetiringException e) {
-                System.out.println("Retiring Exception triggered");
+                Trace.event(Trace.Kind.MOVE_RETIRING, name, name, moves.size());
                 try {
-                    rwLock.writeLock().lock();
+                    lockWrite();
                     if (playerType == PlayerType.Backup) {
-                        System.out.println("I am backup server");
-                        state = shadowMove(move, name);
+                        for (Move move : moves) {
+                            shadowMove(move, name);
+                        }
                     } else {
-                        System.out.println("I am normal player");
-                        Player backup = state.playerRefs.get(i);
-                        state = backup.shadowMove(move, name);
+                        Player backup = refs.get(i);
+                        for (Move move : moves) {
+                            State shadowed = backup.shadowMove(move, name);
+                            if (ofMyShard(shadowed)) {
+                                state = shadowed;
+                            }
+                        }
                     }
                 } catch (Exception e1) {
-                    System.out.println("Something wrong when primary quit");
-                    System.out.println(e1.getMessage());
+                    Trace.event(Trace.Kind.MOVE_FAILED, name, name, moves.size());
                 } finally {
                     rwLock.writeLock().unlock();
                 }
@@ -287,14 +816,19 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
                 continue;
             }
 
-            if (newState == null) {
-                System.out.println(name + " failed to make a move!");
+            if (!ofMyShard(newState)) {
+                Trace.event(Trace.Kind.MOVE_FAILED, name, name, moves.size());
                 return;
             }
 
+            // the primary answered
+            detector.heartbeat(newState.nameAt(0));
             try {
-                rwLock.writeLock().lock();
-                state = newState;
+                lockWrite();
+                // a subscription update pushed while we waited may already be newer
+                if (state.getShard() != newState.getShard() || newState.count >= state.count) {
+                    state = newState;
+                }
                 break;
             } finally {
                 rwLock.writeLock().unlock();
@@ -304,6 +838,7 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
     }
 
     public void refreshState() {
+        awaitMoves();
         if (playerType == PlayerType.Primary || playerType == PlayerType.Backup) {
             System.out.println(name + " am " + playerType + " nothing to refresh");
             return;
@@ -313,8 +848,19 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
         // this reduces the workload on primary
         for (int i = 1; i < state.playerRefs.size(); i++) {
             try {
-                rwLock.writeLock().lock();
-                this.state = state.playerRefs.get(i).get(name);
+                lockWrite();
+                Player backup = state.playerRefs.get(i);
+                // only what changed since our copy, if anything
+                StateUpdate update = backup.getSince(name, state.getEpoch(), state.count);
+                if (update.state != null) {
+                    if (!ofMyShard(update.state)) continue;
+                    this.state = update.state;
+                } else if (update.delta != null && !state.apply(update.delta)) {
+                    // our copy is not from the backup's line, e.g. it is newer. take the whole state
+                    State fetched = backup.get(name);
+                    if (!ofMyShard(fetched)) continue;
+                    this.state = fetched;
+                }
                 break;
             } catch (Exception e) {
                 System.out.println(e.getMessage());
@@ -325,36 +871,272 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
     }
 
     /**
-     * pushToBackup should occur on EVERY write to state
+     * ensureSubscribed subscribes a normal player to the current backup's updates,
+     * again whenever the backup changes. Only with Config.SUBSCRIBE.
+     */
+    private void ensureSubscribed() {
+        if (!Config.SUBSCRIBE || playerType != PlayerType.Normal) return;
+        Player backup;
+        long epoch;
+        int version;
+        try {
+            rwLock.readLock().lock();
+            if (state.playerRefs.size() < 2) return;
+            backup = state.playerRefs.get(1);
+            epoch = state.getEpoch();
+            version = state.count;
+        } finally {
+            rwLock.readLock().unlock();
+        }
+        if (backup.equals(subscribedTo)) return;
+
+        try {
+            backup.subscribe(stub, name, epoch, version, Config.SUBSCRIBE_INTERVAL_MS);
+            subscribedTo = backup;
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * pushToBackup should occur on EVERY write to state.
+     * Only the changes since the last push are sent, unless the backup reports a version gap
+     * or full replication is configured. With async replication the changes are only queued here.
      */
     private void pushToBackup() throws Exception {
+        StateDelta delta = state.takeDelta();
+        // nothing changed, e.g. an invalid move
+        if (delta == null) return;
+        if (journal != null) {
+            journal.append(delta);
+        }
+        if (Config.RECORD_DIR != null && !state.isRecorded() && !cannotRecord) {
+            // from the first change we make as primary on
+            try {
+                state.record(new Recorder(Config.RECORD_DIR, name, state));
+            } catch (Exception e) {
+                System.out.println("cannot record to " + Config.RECORD_DIR + ": " + e.getMessage());
+                cannotRecord = true;
+            }
+        }
+        if (replicator != null) {
+            replicator.enqueue(delta);
+            Metrics.REPLICATION_LAG.set(replicator.lag());
+            return;
+        }
         // do nothing if only primary
         if (state.playerRefs.size() == 1) return;
         for (int i = 1; i < state.playerRefs.size(); i++) {
             try {
-                state.playerRefs.get(i).push(state);
+                long start = System.nanoTime();
+                Player backup = state.playerRefs.get(i);
+                if (!Config.deltaReplication() || !backup.pushDelta(delta)) {
+                    backup.push(state);
+                }
+                Metrics.PUSH.since(start);
+                Trace.event(Trace.Kind.PUSH_SENT, name, state.nameAt(i), state.count);
+                detector.heartbeat(state.nameAt(i));
+                backupVersion = state.count;
                 break;
+            } catch (DeposedException e) {
+                if (stepDown(e.getMessage())) throw e;
+                System.out.println(e.getMessage());
             } catch (Exception e) {
                 System.out.println(e.getMessage());
             }
         }
+        Metrics.REPLICATION_LAG.set(state.count - backupVersion);
     }
 
-    // getPlayerPos is a util function to find `this`'s index list of players
-    private int getPlayerPos() {
-        int i = 0;
-        for (PlayerInfo player: state.players) {
-            if (player.name.equals(name)) break;
-            i++;
+    /**
+     * stepDown fences us off once our backup has taken over, e.g. after it took us for crashed.
+     * Writes are turned away from then on, and the players sending them go on to the new primary.
+     * It returns false if we are not first in our own list, e.g. while taking over ourselves.
+     */
+    boolean stepDown(String reason) {
+        try {
+            rwLock.readLock().lock();
+            if (playerType != PlayerType.Primary || state.indexOf(name) != 0) return false;
+            playerType = PlayerType.Normal;
+        } finally {
+            rwLock.readLock().unlock();
         }
-        return i;
+        System.out.println(name + " steps down: " + reason);
+        return true;
     }
 
     /**
-     * startBackgroundPing starts a thread that pings other servers
+     * write applies `change` to the state as the primary and pushes it to the backup.
+     * With the game loop on, it is queued for the next tick, unless we are the loop already or hold
+     * the write lock, which the loop would wait for. Otherwise it runs here under the write lock.
+     */
+    private <T> T write(TickEngine.Command<T> change) throws Exception {
+        if (engine != null && !engine.onLoop() && !rwLock.isWriteLockedByCurrentThread()) {
+            return engine.call(change);
+        }
+        try {
+            lockWrite();
+            T result = change.apply();
+            pushToBackup();
+            publish();
+            return result;
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * runTick applies a tick's worth of writes in the order they came, then pushes them to the
+     * backup in one go. Writes that come in after we stopped being primary are turned away.
+     */
+    void runTick(List<TickEngine.Task> tasks) throws Exception {
+        try {
+            lockWrite();
+            for (TickEngine.Task task : tasks) {
+                if (playerType == PlayerType.Retiree) {
+                    task.fail(new RetiringException(name + " retiring"));
+                } else if (playerType != PlayerType.Primary) {
+                    task.fail(new Exception(name + " not primary"));
+                } else {
+                    task.apply();
+                }
+            }
+            pushToBackup();
+            publish();
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    // publish makes the current version the one snapshot hands out. writers call it under the write lock
+    private void publish() {
+        State s = published.get();
+        if (s == null || !s.isSnapshotOf(state)) {
+            published.set(state.snapshot());
+        }
+    }
+
+    /**
+     * snapshot returns an immutable copy of the state at its latest version, which callers can
+     * serialize without holding the lock. Writes publish it as they commit, so it is mostly ready;
+     * otherwise it is copied under the read lock. Readers copying the same version at once race to
+     * publish it, the first one wins and the others hand out their copy. The look at the live state
+     * without the lock can only hand out the version published before, or copy once more.
+     */
+    State snapshot() {
+        State s = published.get();
+        if (s != null && state != null && s.isSnapshotOf(state)) {
+            return s;
+        }
+        try {
+            rwLock.readLock().lock();
+            if (state == null) return null;
+            s = published.get();
+            if (s != null && s.isSnapshotOf(state)) {
+                return s;
+            }
+            State copy = state.snapshot();
+            published.compareAndSet(s, copy);
+            return copy;
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    // lockWrite takes the write lock, timing how long we waited for it
+    private void lockWrite() {
+        long start = System.nanoTime();
+        rwLock.writeLock().lock();
+        Metrics.WRITE_LOCK_WAIT.since(start);
+    }
+
+    // heardAt records a heartbeat from the player at index i of the player list
+    void heardAt(int i) {
+        try {
+            rwLock.readLock().lock();
+            if (i < state.playerCount()) {
+                detector.heartbeat(state.nameAt(i));
+            }
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    // playerAt returns the ref at index i of the player list, null if there is none
+    Player playerAt(int i) {
+        try {
+            rwLock.readLock().lock();
+            return i < state.playerRefs.size() ? state.playerRefs.get(i) : null;
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * resume carries a game recovered from the journals over to the game we are starting,
+     * e.g. after the shard's primary and backup crashed together.
+     * The players' scores are kept for when they join again, ours is restored now unless we carry one.
+     */
+    private void resume(State created, boolean restoreOwnScore) {
+        State recovered = Journal.recover(Config.JOURNAL_DIR, created.getShard());
+        if (recovered == null) return;
+        System.out.println("Recovered shard " + created.getShard() + " at COUNT: " + recovered.count);
+        created.resume(recovered);
+        for (int i = 0; i < recovered.playerCount(); i++) {
+            recoveredScores.put(recovered.nameAt(i), recovered.scoreAt(i));
+        }
+        Integer mine = recoveredScores.remove(name);
+        if (mine != null && restoreOwnScore) {
+            created.setScoreAt(0, mine);
+        }
+    }
+
+    // checkpointTo writes our state to `out` for the journal and returns its version, -1 if it is not of `shard`
+    int checkpointTo(ObjectOutput out, int shard) throws IOException {
+        try {
+            rwLock.readLock().lock();
+            if (state == null || state.getShard() != shard) {
+                return -1;
+            }
+            state.writeExternal(out);
+            return state.count;
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    // pushSnapshot sends the whole state to the backup and returns the version it sent
+    // the snapshot does not change, so no lock is held across the remote call
+    int pushSnapshot(Player backup) throws Exception {
+        State latest = snapshot();
+        backup.push(latest);
+        return latest.count;
+    }
+
+    // ofMyShard checks a state received from another node belongs to the shard this player is in
+    private boolean ofMyShard(State s) {
+        return s != null && s.getShard() == shard;
+    }
+
+    // getPlayerPos is a util function to find `this`'s index list of players.
+    // returns the number of players if `this` is not in the game.
+    private int getPlayerPos() {
+        int i = state.indexOf(name);
+        return i < 0 ? state.playerCount() : i;
+    }
+
+    /**
+     * startBackgroundPing starts a thread that checks on our neighbours.
+     * Calls to and from them count as heartbeats, they are only pinged once their link has gone idle,
+     * and they are taken as crashed once the failure detector suspects them, not on the first failed call.
      * See https://stackoverflow.com/questions/12551514/create-threads-in-java-to-run-in-background
      */
     private void startBackgroundPing() {
+        if (membership != null) {
+            startGossip();
+            return;
+        }
+
         Runnable r = () -> {
             int pos = getPlayerPos();
             switch (playerType) {
@@ -367,11 +1149,103 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
                     break;
                 case Normal:
                     pingNormal(pos);
+                    ensureSubscribed();
                     break;
             }
+            watched = watching;
+            watching = new HashSet<>();
+        };
+
+        scheduler.scheduleAtFixedRate(r, 0, 100, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * startGossip runs the membership protocol in place of the ping ring.
+     * Deaths come out of it once each, and only the primary acts on them, see memberDead.
+     */
+    private void startGossip() {
+        Runnable r = () -> {
+            try {
+                rwLock.readLock().lock();
+                membership.sync(state.names(), state.playerRefs);
+            } finally {
+                rwLock.readLock().unlock();
+            }
+            membership.tick();
+            if (playerType == PlayerType.Primary) {
+                // deaths found before we took over
+                for (String leaver : membership.dead()) {
+                    memberDead(leaver);
+                }
+            }
+            if (playerType == PlayerType.Normal) {
+                ensureSubscribed();
+            }
         };
 
-        scheduler.scheduleAtFixedRate(r, 0, 500, TimeUnit.MILLISECONDS);
+        // a tick that waited on a slow member is not made up for with a burst of probes
+        scheduler.scheduleWithFixedDelay(r, 0, Config.GOSSIP_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * memberDead is called by the membership layer once it finds `leaver` dead. A slow member can be
+     * found dead too, so it is pinged first and only acted on if it does not answer.
+     * The primary removes it from the game and the tracker. The backup takes over if it was the primary.
+     * Everyone else waits for the primary's push, a backup that takes over later catches up on its next tick.
+     */
+    private void memberDead(String leaver) {
+        int at;
+        int pos;
+        try {
+            rwLock.readLock().lock();
+            at = state.indexOf(leaver);
+            pos = getPlayerPos();
+        } finally {
+            rwLock.readLock().unlock();
+        }
+        if (at < 0) return;
+        if (playerType != PlayerType.Primary && !(playerType == PlayerType.Backup && at == pos - 1)) return;
+        if (answers(leaver, at)) {
+            // the gossip got it wrong, e.g. it was slow. it refutes the rumor once it hears of it
+            System.out.println(leaver + " at " + at + " was found dead but answers");
+            return;
+        }
+
+        if (playerType == PlayerType.Primary) {
+            System.out.println(leaver + " at " + at + " is gone!");
+            try {
+                leave(leaver);
+            } catch (Exception e) {
+                System.out.println(e.getMessage());
+            }
+            removeFromTracker(leaver);
+        } else if (playerType == PlayerType.Backup && at == pos - 1) {
+            System.out.println(leaver + " [primary] at " + at + " is gone!");
+            handlePrimaryCrash(pos);
+        }
+        detector.forget(leaver);
+    }
+
+    // answers pings `leaver`, at index `at` of the player list, and tells whether it answered
+    private boolean answers(String leaver, int at) {
+        Player ref;
+        try {
+            rwLock.readLock().lock();
+            if (at >= state.playerRefs.size() || !leaver.equals(state.nameAt(at))) return true;
+            ref = state.playerRefs.get(at);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+        try {
+            ref.ping();
+            detector.heartbeat(leaver);
+            return true;
+        } catch (Exception e) {
+            detector.failed(leaver);
+            Metrics.PING_FAILURES.increment();
+            Trace.event(Trace.Kind.PING_TIMEOUT, name, leaver, 0);
+            return false;
+        }
     }
 
     private void reportCrash(String leaver) {
@@ -387,8 +1261,11 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
                 }
             } else {
                 try {
-                    rwLock.writeLock().lock();
-                    this.state = player.leave(leaver); // assignment is required else player may encounter out-of-bound errors
+                    lockWrite();
+                    State reported = player.leave(leaver);
+                    if (ofMyShard(reported)) {
+                        this.state = reported; // assignment is required else player may encounter out-of-bound errors
+                    }
                     break;
                 } catch (Exception e) {
                     System.out.println(e.getMessage());
@@ -401,7 +1278,7 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
 
     private void handleBackupCrash(int primaryPosition) {
         try {
-            String name = state.players.get(primaryPosition + 1).name;
+            String name = state.nameAt(primaryPosition + 1);
             leave(name);
             removeFromTracker(name);
         } catch (Exception e) {
@@ -410,13 +1287,15 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
     }
 
     private void handlePrimaryCrash(int backupPosition) {
+        Metrics.FAILOVERS.increment();
         // Step 1: become primary
         this.playerType = PlayerType.Primary;
 
         // Step 2: remove primary. can be after step 1 since other players will fail anyway
         try {
             // Step 3: appoint new backup is handled in the `leave` function
-            String name = state.players.get(backupPosition - 1).name;
+            String name = state.nameAt(backupPosition - 1);
+            Trace.event(Trace.Kind.PROMOTED, this.name, name, state.count);
             leave(name);
             removeFromTracker(name);
             reIdentifySelf();
@@ -427,11 +1306,11 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
 
     private void pingBackup(int pos) {
         try {
-            if (state.playerRefs.size() <= pos + 1) return;
-            state.playerRefs.get(pos + 1).ping();
-        } catch (RemoteException e) {
-            System.out.println(state.players.get(pos+1).name + " [backup] at " + (pos+1) + " is gone!");
+            if (state.playerRefs.size() <= pos + 1 || alive(pos + 1)) return;
+            String backup = state.nameAt(pos + 1);
+            System.out.println(backup + " [backup] at " + (pos+1) + " is gone!");
             handleBackupCrash(pos);
+            detector.forget(backup);
         } catch (Exception e) {
             System.out.println(e.getMessage());
         }
@@ -439,36 +1318,80 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
 
     private void pingPrimary(int pos) {
         try {
-            state.playerRefs.get(pos - 1).ping();
-        } catch (RemoteException e) {
-            System.out.println(state.players.get(pos-1).name + " [primary] at " + (pos-1) + " is gone!");
+            if (pos < 1 || alive(pos - 1)) return;
+            String primary = state.nameAt(pos - 1);
+            System.out.println(primary + " [primary] at " + (pos-1) + " is gone!");
             handlePrimaryCrash(pos);
+            detector.forget(primary);
         } catch (Exception e) {
             System.out.println(e.getMessage());
         }
     }
 
     /**
-     * pingNormal pings the next player in game state's playerRef
+     * pingNormal checks on the next player in game state's playerRef
      */
     private void pingNormal(int pos) {
         // TODO might need read lock here but its complicated since reportCrash will need to mutate the state
         try {
-            if (state.playerRefs.size() <= pos + 1) return;
-            state.playerRefs.get(pos + 1).ping();
-        } catch (RemoteException e) {
+            if (state.playerRefs.size() <= pos + 1 || alive(pos + 1)) return;
             System.out.println("player at " + (pos+1) + " is gone!");
-            String name = state.players.get(pos+1).name;
+            String name = state.nameAt(pos+1);
             reportCrash(name);
             removeFromTracker(name);
+            detector.forget(name);
         } catch (Exception e) {
             System.out.println(e.getMessage());
         }
     }
 
+    /**
+     * alive tells whether the player at index i is still trusted to be up.
+     * It pings the player in the background if we have not heard from it for a while,
+     * a failed ping just leaves its suspicion growing.
+     */
+    private boolean alive(int i) {
+        String peer;
+        Player ref;
+        try {
+            rwLock.readLock().lock();
+            if (i >= state.playerRefs.size()) return true;
+            peer = state.nameAt(i);
+            ref = state.playerRefs.get(i);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+
+        watching.add(peer);
+        if (!watched.contains(peer)) {
+            // a new neighbour, e.g. after a crash or a handoff. what we knew of it is out of date
+            detector.forget(peer);
+        }
+        // a suspect is pinged too, it is only taken as down once a call to it failed
+        if ((detector.idleMillis(peer) >= Config.FD_IDLE_MS || detector.suspects(peer)) && pinging.add(peer)) {
+            pinger.execute(() -> {
+                try {
+                    long start = System.nanoTime();
+                    ref.ping();
+                    Metrics.PING.since(start);
+                    detector.heartbeat(peer);
+                } catch (Exception e) {
+                    detector.failed(peer);
+                    Metrics.PING_FAILURES.increment();
+                    Trace.event(Trace.Kind.PING_TIMEOUT, name, peer, 0);
+                } finally {
+                    pinging.remove(peer);
+                }
+            });
+        }
+        return !detector.isDown(peer);
+    }
+
     private void removeFromTracker(String leaver) {
+        Metrics.CRASHES_REPORTED.increment();
+        Trace.event(Trace.Kind.CRASH_REPORTED, name, leaver, 0);
         try {
-            TrackerRMI trackerRMIRef = (TrackerRMI) LocateRegistry.getRegistry(trackerInfo.host, trackerInfo.port).lookup(trackerInfo.name);
+            TrackerRMI trackerRMIRef = Transport.get().lookupTracker(trackerInfo.host, trackerInfo.port, trackerInfo.name);
             trackerRMIRef.unregister(leaver);
         } catch (Exception e) {
             System.out.println(e.getMessage());
@@ -507,6 +1430,8 @@ public class PlayerImpl extends UnicastRemoteObject implements Player, Serializa
             int cellSize = Math.round(grid/n);
             for(int i = 0; i < n; i++) {
                 for(int j = 0; j < n; j++) {
+                    // cells of other shards are left dark
+                    if (!state.getRegion().contains(i, j)) continue;
                     g.fillRect(grid + spacing+i*cellSize, spacing+j*cellSize, cellSize-2*spacing, cellSize-2*spacing );
                 }
             }
@@ -1,16 +1,33 @@
-import java.awt.*;
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+public class Position implements Externalizable {
+    private static final long serialVersionUID = Wire.FORMAT;
 
-public class Position implements Serializable {
     int x;
     int y;
 
+    // required by Externalizable
+    public Position() {}
+
     public Position(int x, int y) {
         this.x = x;
         this.y = y;
     }
 
-    public void draw(Graphics g, int spacing, int cellSize, int offset) {
-        g.drawString("*", offset + x * cellSize + cellSize/4, spacing + (y+1) * cellSize);
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        Wire.writeHeader(out);
+        Wire.writeVarint(out, x);
+        Wire.writeVarint(out, y);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        Wire.readHeader(in, "Position");
+        x = Wire.readVarint(in);
+        y = Wire.readVarint(in);
     }
 }
@@ -0,0 +1,109 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publisher pushes the backup's state to the normal players that subscribed to it,
+ * through the same push / pushDelta calls the primary uses to update the backup.
+ *
+ * A subscriber gets at most one update per its interval and has at most one in flight.
+ * Changes made meanwhile are merged into the next update, so a slow subscriber
+ * skips straight to the latest version instead of queueing the ones in between.
+ */
+public class Publisher {
+    private final PlayerImpl owner;
+    private final ConcurrentHashMap<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(Threads.factory("publisher-timer"));
+    // sends run here, so that one slow subscriber does not hold up the others
+    private final ExecutorService senders = Threads.perTask("publisher");
+
+    private static class Subscriber {
+        final String name;
+        final Player ref;
+        final long intervalMs;
+        // latest version the subscriber has, and of which game
+        volatile long epoch;
+        volatile int version;
+        long lastSent;
+        // a send is scheduled or in flight
+        boolean busy;
+
+        Subscriber(String name, Player ref, long epoch, int version, long intervalMs) {
+            this.name = name;
+            this.ref = ref;
+            this.epoch = epoch;
+            this.version = version;
+            this.intervalMs = intervalMs;
+        }
+    }
+
+    public Publisher(PlayerImpl owner) {
+        this.owner = owner;
+    }
+
+    public void subscribe(String name, Player ref, long epoch, int version, int intervalMs) {
+        Subscriber s = new Subscriber(name, ref, epoch, version, Math.max(intervalMs, 0));
+        subscribers.put(name, s);
+        schedule(s);
+    }
+
+    public void unsubscribe(String name) {
+        subscribers.remove(name);
+    }
+
+    // changed is called after every change to the owner's state
+    public void changed() {
+        for (Subscriber s : subscribers.values()) {
+            schedule(s);
+        }
+    }
+
+    private void schedule(Subscriber s) {
+        long wait;
+        synchronized (s) {
+            if (s.busy || owner.isAt(s.epoch, s.version)) return;
+            s.busy = true;
+            wait = s.lastSent + s.intervalMs - System.currentTimeMillis();
+        }
+        timer.schedule(() -> senders.execute(() -> send(s)), Math.max(wait, 0), TimeUnit.MILLISECONDS);
+    }
+
+    private void send(Subscriber s) {
+        try {
+            if (!owner.isBackup()) {
+                throw new Exception("no longer the backup");
+            }
+            StateUpdate update = owner.updateSince(s.epoch, s.version);
+            if (update.state != null) {
+                sent(s, update.state);
+            } else if (update.delta != null) {
+                if (s.ref.pushDelta(update.delta)) {
+                    s.version = update.delta.count;
+                } else {
+                    // it missed changes it cannot get from the delta. it drops the state if it is ahead meanwhile
+                    sent(s, owner.updateSince(s.epoch, -1).state);
+                }
+            }
+        } catch (Exception e) {
+            // gone, moved to another shard, or promoted. it subscribes again with its new backup
+            System.out.println("dropping subscriber " + s.name + ": " + e.getMessage());
+            subscribers.remove(s.name, s);
+            return;
+        } finally {
+            synchronized (s) {
+                s.busy = false;
+                s.lastSent = System.currentTimeMillis();
+            }
+        }
+        // more changes may have come in while we were sending
+        schedule(s);
+    }
+
+    private static void sent(Subscriber s, State latest) throws Exception {
+        s.ref.push(latest);
+        s.epoch = latest.getEpoch();
+        s.version = latest.count;
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Recorder writes down a game session as played on the primary, so that Replay can run it again.
+ *
+ * A recording starts with the State as it was when recording began and the seed its random
+ * numbers are drawn from from then on. Then come the calls made on that State, in order.
+ * Given both, the State makes the same moves, scores and treasure placements again.
+ *
+ * Calls are made under the primary's write lock. They are buffered and flushed every second.
+ */
+public class Recorder {
+    static final int ADD = 1;
+    static final int ADD_AT = 2;
+    static final int MOVE = 3;
+    static final int REMOVE = 4;
+
+    private final ObjectOutputStream out;
+    private final Path file;
+
+    /**
+     * Recorder starts a recording of `state` in `dir` and reseeds the state to match it.
+     */
+    public Recorder(String dir, String name, State state) throws IOException {
+        Path d = Paths.get(dir);
+        Files.createDirectories(d);
+        this.file = d.resolve(name + "-shard" + state.getShard() + "-" + state.count + ".rec");
+        this.out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile())));
+
+        long seed = new Random().nextLong();
+        Wire.writeHeader(out);
+        out.writeLong(seed);
+        state.writeExternal(out);
+        state.reseed(seed);
+        out.flush();
+
+        Threads.start("recorder", this::flushEverySecond);
+        // shutdown hooks must be platform threads that are not started yet
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+        System.out.println("Recording to " + file);
+    }
+
+    public synchronized void added(String name, int score) {
+        try {
+            out.writeByte(ADD);
+            out.writeUTF(name);
+            Wire.writeVarint(out, score);
+        } catch (IOException e) {
+            System.out.println("recorder: " + e.getMessage());
+        }
+    }
+
+    public synchronized void addedAt(String name, int x, int y, int score) {
+        try {
+            out.writeByte(ADD_AT);
+            out.writeUTF(name);
+            Wire.writeVarint(out, x);
+            Wire.writeVarint(out, y);
+            Wire.writeVarint(out, score);
+        } catch (IOException e) {
+            System.out.println("recorder: " + e.getMessage());
+        }
+    }
+
+    public synchronized void moved(String name, Move move) {
+        try {
+            out.writeByte(MOVE);
+            out.writeUTF(name);
+            out.writeByte(move.ordinal());
+        } catch (IOException e) {
+            System.out.println("recorder: " + e.getMessage());
+        }
+    }
+
+    public synchronized void removed(String name) {
+        try {
+            out.writeByte(REMOVE);
+            out.writeUTF(name);
+        } catch (IOException e) {
+            System.out.println("recorder: " + e.getMessage());
+        }
+    }
+
+    public synchronized void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("recorder: " + e.getMessage());
+        }
+    }
+
+    private void flushEverySecond() {
+        while (true) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            flush();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replay runs a session written by Recorder against State, headless and without any other node,
+ * as fast as it goes. It prints how long each run took and the outcome, which is the same on
+ * every run and on every build that plays the game the same way.
+ *
+ *     java Replay <recording> [runs]
+ */
+public class Replay {
+    private final long seed;
+    // the recorded start state, decoded afresh for every run
+    private final byte[] start;
+    private final List<Call> calls = new ArrayList<>();
+
+    private static class Call {
+        final int kind;
+        final String name;
+        final Move move;
+        final int x;
+        final int y;
+        final int score;
+
+        Call(int kind, String name, Move move, int x, int y, int score) {
+            this.kind = kind;
+            this.name = name;
+            this.move = move;
+            this.x = x;
+            this.y = y;
+            this.score = score;
+        }
+    }
+
+    public Replay(String file) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Wire.readHeader(in, "recording");
+            seed = in.readLong();
+            State state = new State();
+            state.readExternal(in);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                state.writeExternal(out);
+            }
+            start = bytes.toByteArray();
+
+            while (true) {
+                int kind;
+                try {
+                    kind = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                try {
+                    String name = in.readUTF();
+                    switch (kind) {
+                        case Recorder.ADD:
+                            calls.add(new Call(kind, name, null, 0, 0, Wire.readVarint(in)));
+                            break;
+                        case Recorder.ADD_AT:
+                            int x = Wire.readVarint(in);
+                            int y = Wire.readVarint(in);
+                            calls.add(new Call(kind, name, null, x, y, Wire.readVarint(in)));
+                            break;
+                        case Recorder.MOVE:
+                            calls.add(new Call(kind, name, Move.values()[in.readUnsignedByte()], 0, 0, 0));
+                            break;
+                        default:
+                            calls.add(new Call(kind, name, null, 0, 0, 0));
+                            break;
+                    }
+                } catch (EOFException e) {
+                    // the recording was cut short in the middle of a call
+                    break;
+                }
+            }
+        }
+    }
+
+    // run plays the session once and returns the state it ends in
+    public State run() throws IOException, ClassNotFoundException {
+        State state = new State();
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(start))) {
+            state.readExternal(in);
+        }
+        state.reseed(seed);
+        for (Call c : calls) {
+            try {
+                switch (c.kind) {
+                    case Recorder.ADD:
+                        state.addPlayer(null, c.name, c.score);
+                        break;
+                    case Recorder.ADD_AT:
+                        state.addPlayerAt(null, c.name, c.x, c.y, c.score);
+                        break;
+                    case Recorder.MOVE:
+                        state.move(c.move, c.name);
+                        break;
+                    default:
+                        state.removePlayer(c.name);
+                        break;
+                }
+            } catch (IllegalStateException e) {
+                // failed the same way when it was recorded
+            }
+            // deltas are only wanted by a backup, do not let them pile up
+            state.takeDelta();
+        }
+        return state;
+    }
+
+    public int size() {
+        return calls.size();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: java Replay <recording> [runs]");
+            System.exit(1);
+        }
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Replay replay = new Replay(args[0]);
+        System.out.println(replay.size() + " calls, seed " + replay.seed);
+
+        String outcome = null;
+        for (int r = 0; r < runs; r++) {
+            long start = System.nanoTime();
+            State end = replay.run();
+            long nanos = System.nanoTime() - start;
+
+            StringBuilder b = new StringBuilder("COUNT: " + end.count);
+            for (int i = 0; i < end.playerCount(); i++) {
+                b.append(" ").append(end.nameAt(i)).append("=").append(end.scoreAt(i));
+            }
+            if (outcome != null && !outcome.equals(b.toString())) {
+                System.out.println("run " + r + " ended differently: " + b);
+            }
+            outcome = b.toString();
+            System.out.printf("run %d: %.1f ms, %.0f calls/s%n", r, nanos / 1e6, replay.size() / (nanos / 1e9));
+        }
+        System.out.println(outcome);
+    }
+}
@@ -0,0 +1,165 @@
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Replicator streams the primary's committed deltas to the backup from its own thread,
+ * so that writers do not hold the write lock across a remote call.
+ *
+ * At most Config.REPLICATION_MAX_LAG versions may be waiting for the backup's ack.
+ * Past that, admit either blocks the writer or rejects the write (Config.REPLICATION_OVERFLOW).
+ * Deltas queued while the backup was busy are merged and sent as one.
+ * A version is only acked once a backup has it, a delta no backup took is sent again.
+ */
+public class Replicator {
+    // how long to wait before sending again a delta no backup took
+    private static final int RETRY_MS = 50;
+
+    private final PlayerImpl owner;
+    private final LinkedBlockingQueue<StateDelta> queue = new LinkedBlockingQueue<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition progress = lock.newCondition();
+    // latest version handed to the replicator, and latest version the backup has
+    private int committed;
+    private int acked;
+    // version of the last full snapshot sent, deltas up to it are already on the backup
+    private int snapshotVersion = -1;
+
+    public Replicator(PlayerImpl owner) {
+        this.owner = owner;
+        Threads.start("replicator", this::run);
+    }
+
+    /**
+     * admit is called before a write. It waits, or throws if shedding is configured,
+     * while too many versions are unacknowledged.
+     */
+    public void admit() throws Exception {
+        try {
+            lock.lock();
+            while (committed - acked >= Config.REPLICATION_MAX_LAG) {
+                if (Config.shedOnReplicationLag()) {
+                    throw new Exception("backup is " + (committed - acked) + " versions behind, move rejected");
+                }
+                progress.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * enqueue is called under the primary's write lock, in version order.
+     */
+    public void enqueue(StateDelta delta) {
+        try {
+            lock.lock();
+            if (committed == acked) {
+                // idle, e.g. after a failover. nothing older is in flight
+                acked = delta.base;
+            }
+            committed = delta.count;
+        } finally {
+            lock.unlock();
+        }
+        queue.add(delta);
+    }
+
+    // awaitAck blocks until the backup has `version`
+    public void awaitAck(int version) throws InterruptedException {
+        try {
+            lock.lock();
+            while (acked < version && committed >= version) {
+                progress.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int lag() {
+        try {
+            lock.lock();
+            return committed - acked;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        // a delta no backup took yet, it is sent again with whatever queued up behind it
+        StateDelta pending = null;
+        while (true) {
+            try {
+                StateDelta delta = pending != null ? pending : queue.take();
+                // merge whatever piled up behind it into a fresh delta, the queued ones stay untouched
+                StateDelta next = queue.peek();
+                if (next != null && next.base == delta.count) {
+                    StateDelta merged = new StateDelta(delta.shard, delta.epoch, delta.base);
+                    merged.addAll(delta);
+                    merged.count = delta.count;
+                    while ((next = queue.peek()) != null && next.base == merged.count) {
+                        queue.poll();
+                        merged.addAll(next);
+                        merged.count = next.count;
+                    }
+                    delta = merged;
+                }
+
+                if (delta.count <= snapshotVersion || ship(delta)) {
+                    pending = null;
+                    ack(delta.count);
+                } else {
+                    // the backups did not answer. the failure detector drops them in time and we try the next one
+                    pending = delta;
+                    Thread.sleep(RETRY_MS);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                System.out.println("replicator: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * ship sends `delta` to the first player after the primary that answers, in the same order as
+     * pushToBackup. It returns false if none did. With no other player there is no backup to wait for.
+     */
+    private boolean ship(StateDelta delta) {
+        for (int i = 1; ; i++) {
+            Player backup = owner.playerAt(i);
+            if (backup == null) return i == 1;
+            try {
+                long start = System.nanoTime();
+                if (!Config.deltaReplication() || delta.base < snapshotVersion || !backup.pushDelta(delta)) {
+                    snapshotVersion = owner.pushSnapshot(backup);
+                }
+                Metrics.PUSH.since(start);
+                Trace.event(Trace.Kind.PUSH_SENT, owner.getName(), null, delta.count);
+                owner.heardAt(i);
+                return true;
+            } catch (DeposedException e) {
+                // nobody takes our writes any more
+                if (owner.stepDown(e.getMessage())) return true;
+                System.out.println(e.getMessage());
+            } catch (Exception e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    private void ack(int version) {
+        try {
+            lock.lock();
+            if (version > acked) {
+                acked = version;
+            }
+            Metrics.REPLICATION_LAG.set(committed - acked);
+            progress.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
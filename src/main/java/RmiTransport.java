@@ -0,0 +1,39 @@
+import java.rmi.AlreadyBoundException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+
+/**
+ * RmiTransport exports objects with UnicastRemoteObject and finds the tracker through
+ * the rmiregistry running on the tracker's port.
+ */
+public class RmiTransport extends Transport {
+    @Override
+    public Player export(Player player, String name) throws RemoteException {
+        return (Player) UnicastRemoteObject.exportObject(player, 0);
+    }
+
+    @Override
+    public TrackerRMI exportTracker(TrackerRMI tracker, int port, String name) throws RemoteException {
+        TrackerRMI stub = (TrackerRMI) UnicastRemoteObject.exportObject(tracker, 0);
+        Registry registry = LocateRegistry.getRegistry(port);
+        try {
+            registry.bind(name, stub);
+        } catch (AlreadyBoundException e) {
+            // left over from a previous tracker
+            registry.rebind(name, stub);
+        }
+        return stub;
+    }
+
+    @Override
+    public TrackerRMI lookupTracker(String host, int port, String name) throws RemoteException {
+        try {
+            return (TrackerRMI) LocateRegistry.getRegistry(host, port).lookup(name);
+        } catch (NotBoundException e) {
+            throw new RemoteException(name + " is not bound at " + host + ":" + port, e);
+        }
+    }
+}
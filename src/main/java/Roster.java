@@ -0,0 +1,118 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Roster is the tracker's list of the players of one shard, as of one epoch.
+ * It is never changed once built: adding or removing a player makes the next epoch's Roster,
+ * so readers need no lock and can hand it out as is.
+ * The encoded player list is kept, and sent to every player bootstrapping in the same epoch.
+ */
+public class Roster {
+    public final long epoch;
+    // in joining order, not to be changed
+    public final Vector<Player> players;
+    private final Vector<String> names;
+    // name -> index in players
+    private final Map<String, Integer> slots;
+    private volatile byte[] encoded;
+
+    public static final Roster EMPTY = new Roster(0, new Vector<>(), new Vector<>());
+
+    // restore rebuilds the Roster of a given epoch, e.g. from the tracker's log
+    public static Roster restore(long epoch, Vector<Player> players, Vector<String> names) {
+        return new Roster(epoch, players, names);
+    }
+
+    private Roster(long epoch, Vector<Player> players, Vector<String> names) {
+        this.epoch = epoch;
+        this.players = players;
+        this.names = names;
+        HashMap<String, Integer> slots = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            slots.put(names.get(i), i);
+        }
+        this.slots = Collections.unmodifiableMap(slots);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public String nameAt(int i) {
+        return names.get(i);
+    }
+
+    public boolean contains(String name) {
+        return slots.containsKey(name);
+    }
+
+    // indexOf returns where `name` is in the list, -1 if it is not
+    public int indexOf(String name) {
+        Integer i = slots.get(name);
+        return i == null ? -1 : i;
+    }
+
+    // at returns the same players as of `epoch`, e.g. as the tracker's log recorded it
+    public Roster at(long epoch) {
+        return epoch == this.epoch ? this : new Roster(epoch, players, names);
+    }
+
+    // with returns the next epoch's Roster, with `name` added at the end
+    public Roster with(Player player, String name) {
+        Vector<Player> players = new Vector<>(this.players);
+        Vector<String> names = new Vector<>(this.names);
+        players.add(player);
+        names.add(name);
+        return new Roster(epoch + 1, players, names);
+    }
+
+    // without returns the next epoch's Roster, without `name`. It returns this Roster if `name` is not in it
+    public Roster without(String name) {
+        Integer i = slots.get(name);
+        if (i == null) return this;
+        Vector<Player> players = new Vector<>(this.players);
+        Vector<String> names = new Vector<>(this.names);
+        players.remove((int) i);
+        names.remove((int) i);
+        return new Roster(epoch + 1, players, names);
+    }
+
+    // encoded returns the player list as Bootstrap sends it, encoding it on first use
+    public byte[] encoded() throws IOException {
+        byte[] bytes = encoded;
+        if (bytes == null) {
+            bytes = encode(players);
+            encoded = bytes;
+        }
+        return bytes;
+    }
+
+    public static byte[] encode(Vector<Player> players) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            Wire.writeVarint(out, players.size());
+            for (Player p : players) {
+                out.writeObject(p);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    public static Vector<Player> decode(byte[] encoded) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(encoded))) {
+            int size = Wire.readVarint(in);
+            Vector<Player> players = new Vector<>(size);
+            for (int i = 0; i < size; i++) {
+                players.add((Player) in.readObject());
+            }
+            return players;
+        }
+    }
+}
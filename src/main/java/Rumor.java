@@ -0,0 +1,51 @@
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Rumor is what one player tells another about a member of the game: that it is alive,
+ * suspected or dead, as of the member's incarnation. Rumors ride on the membership probes.
+ */
+public class Rumor implements Externalizable {
+    private static final long serialVersionUID = Wire.FORMAT;
+
+    public static final int ALIVE = 0;
+    public static final int SUSPECT = 1;
+    public static final int DEAD = 2;
+
+    public String name;
+    public int status;
+    // bumped by the member itself to refute a suspicion
+    public int incarnation;
+
+    // required by Externalizable
+    public Rumor() {}
+
+    public Rumor(String name, int status, int incarnation) {
+        this.name = name;
+        this.status = status;
+        this.incarnation = incarnation;
+    }
+
+    @Override
+    public String toString() {
+        return name + (status == ALIVE ? " alive" : status == SUSPECT ? " suspect" : " dead") + "@" + incarnation;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        Wire.writeHeader(out);
+        out.writeUTF(name);
+        out.writeByte(status);
+        Wire.writeVarint(out, incarnation);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        Wire.readHeader(in, "Rumor");
+        name = in.readUTF();
+        status = in.readUnsignedByte();
+        incarnation = Wire.readVarint(in);
+    }
+}
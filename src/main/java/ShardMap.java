@@ -0,0 +1,57 @@
+/**
+ * ShardMap splits the N x N maze into perSide x perSide rectangular regions.
+ * Each region (shard) is played as its own game, with its own primary and backup
+ * elected from that shard's player list. With perSide = 1 there is a single shard
+ * covering the whole maze.
+ */
+public class ShardMap {
+    public final int N;
+    public final int perSide;
+
+    public ShardMap(int n, int perSide) {
+        this.N = n;
+        this.perSide = Math.max(1, Math.min(perSide, n));
+    }
+
+    public int count() {
+        return perSide * perSide;
+    }
+
+    // shardOf returns the shard owning cell (x, y), -1 if it is off the maze
+    public int shardOf(int x, int y) {
+        if (x < 0 || x >= N || y < 0 || y >= N) return -1;
+        return (y * perSide / N) * perSide + (x * perSide / N);
+    }
+
+    public Region region(int shard) {
+        int col = shard % perSide;
+        int row = shard / perSide;
+        return new Region(col * N / perSide, row * N / perSide, (col + 1) * N / perSide, (row + 1) * N / perSide);
+    }
+
+    // treasuresPerShard spreads the K treasures over the shards, rounding up
+    public int treasuresPerShard(int k) {
+        return (k + count() - 1) / count();
+    }
+
+    /**
+     * Region is the rectangle [x0, x1) x [y0, y1) of the maze.
+     */
+    public static class Region {
+        public final int x0;
+        public final int y0;
+        public final int x1;
+        public final int y1;
+
+        public Region(int x0, int y0, int x1, int y1) {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        public boolean contains(int x, int y) {
+            return x >= x0 && x < x1 && y >= y0 && y < y1;
+        }
+    }
+}
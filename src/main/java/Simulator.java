@@ -0,0 +1,460 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Simulator plays a whole game in one JVM: a Tracker and any number of PlayerImpl talking over
+ * LoopbackTransport, each player on its own node. Players join, move, crash and lose their primary
+ * at the rates set below. Then the simulator stops, gives the game time to settle and checks that
+ * it is consistent: one primary per shard, an up to date backup, every live player in exactly one
+ * game, no crashed player left in a game or on the tracker.
+ *
+ *     java Simulator <players> [seconds] [N] [K]
+ *
+ * Rates are system properties:
+ *     sim.joinRate       players joining per second, 100
+ *     sim.moveRate       moves per player per second, 1
+ *     sim.movers         threads sending the moves, 4
+ *     sim.crashEvery     milliseconds between crashes of a random player, 0 for none, 2000
+ *     sim.failoverEvery  milliseconds between crashes of a primary, 0 for none, 5000
+ *     sim.settle         milliseconds the game gets to settle after the run, 10000
+ *     sim.seed           seed of the script, 1
+ * Moves are sent from threads of their own, so that the joins and crashes, which the main thread
+ * makes one at a time and may take seconds, do not hold them up.
+ * A shard gets no second crash within CRASH_GAP of the first, as the assignment promises.
+ * Crashed players are replaced by new ones, so the game keeps its size.
+ */
+public class Simulator {
+    private static final double JOIN_RATE = Double.parseDouble(System.getProperty("sim.joinRate", "100"));
+    private static final double MOVE_RATE = Double.parseDouble(System.getProperty("sim.moveRate", "1"));
+    private static final int MOVERS = Math.max(Integer.getInteger("sim.movers", 4), 1);
+    private static final long CRASH_EVERY = Long.getLong("sim.crashEvery", 2000);
+    private static final long FAILOVER_EVERY = Long.getLong("sim.failoverEvery", 5000);
+    private static final long SETTLE = Long.getLong("sim.settle", 10000);
+    private static final long SEED = Long.getLong("sim.seed", 1);
+    private static final long CRASH_GAP = 2000;
+    private static final int TRACKER_PORT = 2001;
+    private static final String TRACKER_NAME = "TrackerRMI";
+
+    private final int N;
+    private final int K;
+    private final ShardMap shards;
+    private final Tracker tracker;
+    private final LoopbackTransport transport;
+    private final Random random = new Random(SEED);
+    private final PrintStream console;
+
+    // players up, and when each shard last lost one. only touched by the main thread
+    private final List<Sim> live = new ArrayList<>();
+    private final Map<Integer, Long> lastCrash = new HashMap<>();
+    // copy of live for other threads, replaced on every join and crash
+    private volatile Sim[] players = new Sim[0];
+    private long nextCrash = Long.MAX_VALUE;
+    private long nextFailover = Long.MAX_VALUE;
+    // told how long each join took, -1 if it failed, and the shard of each crash and whether it hit the primary
+    private LongConsumer onJoin = nanos -> {};
+    private BiConsumer<Integer, Boolean> onCrash = (shard, primary) -> {};
+    private int nextId;
+    private int joins;
+    private int failedJoins;
+    private final AtomicLong moves = new AtomicLong();
+    private int crashes;
+    private int failovers;
+
+    static class Sim {
+        final String name;
+        final ThreadGroup group;
+        PlayerImpl player;
+
+        Sim(String name) {
+            this.name = name;
+            this.group = new ThreadGroup(name);
+        }
+    }
+
+    public Simulator(int n, int k, PrintStream console) throws Exception {
+        this.N = n;
+        this.K = k;
+        this.console = console;
+        this.shards = new ShardMap(n, Config.SHARDS_PER_SIDE);
+        Metrics.serve(Config.METRICS_PORT);
+        this.transport = (LoopbackTransport) Transport.get();
+        this.tracker = new Tracker(TRACKER_PORT, n, k, TRACKER_NAME);
+        transport.exportTracker(tracker, TRACKER_PORT, TRACKER_NAME);
+    }
+
+    void onJoin(LongConsumer onJoin) {
+        this.onJoin = onJoin;
+    }
+
+    void onCrash(BiConsumer<Integer, Boolean> onCrash) {
+        this.onCrash = onCrash;
+    }
+
+    // players returns the live players, safe to call from any thread
+    Sim[] players() {
+        return players;
+    }
+
+    /**
+     * join starts a new player on a node of its own and waits until it is in the game,
+     * retrying like Game does while its shard is still recovering from a crash.
+     */
+    private void join() throws InterruptedException {
+        long start = System.nanoTime();
+        Sim sim = new Sim("p" + nextId++);
+        Thread t = new Thread(sim.group, () -> {
+            transport.enter(sim.group);
+            try {
+                PlayerImpl player = new PlayerImpl(sim.name);
+                TrackerRMI trackerRef = Transport.get().lookupTracker("localhost", TRACKER_PORT, TRACKER_NAME);
+                Bootstrap bs = trackerRef.register(player.getStub(), sim.name);
+                boolean joined = player.bootstrap(bs);
+                for (int tries = 0; !joined && tries < 5; tries++) {
+                    Thread.sleep(500);
+                    bs = trackerRef.fetchShard(bs.shard);
+                    joined = player.bootstrap(bs);
+                }
+                if (joined) {
+                    sim.player = player;
+                } else {
+                    // as Game does, nobody else would take it off the tracker
+                    trackerRef.unregister(sim.name);
+                    transport.crash(sim.group);
+                    player.halt();
+                }
+            } catch (Exception e) {
+                System.out.println(sim.name + " cannot join: " + e.getMessage());
+            }
+        }, sim.name + "-main");
+        t.start();
+        t.join();
+
+        if (sim.player == null) {
+            failedJoins++;
+            onJoin.accept(-1);
+            return;
+        }
+        live.add(sim);
+        players = live.toArray(new Sim[0]);
+        joins++;
+        onJoin.accept(System.nanoTime() - start);
+    }
+
+    private void crash(Sim sim) {
+        State state = sim.player.state;
+        boolean primary = sim.player.getPlayerType() == PlayerType.Primary;
+        transport.crash(sim.group);
+        sim.player.halt();
+        live.remove(sim);
+        players = live.toArray(new Sim[0]);
+        if (state != null) {
+            lastCrash.put(state.getShard(), System.currentTimeMillis());
+            onCrash.accept(state.getShard(), primary);
+        }
+    }
+
+    // victim picks a live player in a shard that has not just lost one, a primary if `primary`
+    private Sim victim(boolean primary) {
+        long now = System.currentTimeMillis();
+        List<Sim> candidates = new ArrayList<>();
+        for (Sim sim : live) {
+            State state = sim.player.state;
+            if (state == null) continue;
+            if (now - lastCrash.getOrDefault(state.getShard(), 0L) < CRASH_GAP) continue;
+            if (primary && sim.player.getPlayerType() != PlayerType.Primary) continue;
+            candidates.add(sim);
+        }
+        return candidates.isEmpty() ? null : candidates.get(random.nextInt(candidates.size()));
+    }
+
+    // populate lets players join until there are `players`
+    void populate(int players) throws InterruptedException {
+        long start = System.nanoTime();
+        while (live.size() < players) {
+            join();
+            pace(start, joins + failedJoins, JOIN_RATE);
+        }
+        double took = (System.nanoTime() - start) / 1e9;
+        console.printf("joined %d players in %.1f s, %.0f joins/s, %d failed%n", joins, took, joins / took, failedJoins);
+        long now = System.currentTimeMillis();
+        nextCrash = CRASH_EVERY > 0 ? now + CRASH_EVERY : Long.MAX_VALUE;
+        nextFailover = FAILOVER_EVERY > 0 ? now + FAILOVER_EVERY : Long.MAX_VALUE;
+    }
+
+    /**
+     * chaos makes the crashes that are due and replaces one crashed player. It is called
+     * over and over by the main thread while the game runs.
+     */
+    void chaos(int players) throws InterruptedException {
+        // a crash that is due waits for a shard it may hit, failovers first
+        if (System.currentTimeMillis() >= nextFailover) {
+            Sim sim = victim(true);
+            if (sim != null) {
+                crash(sim);
+                failovers++;
+                nextFailover += FAILOVER_EVERY;
+            }
+        }
+        if (System.currentTimeMillis() >= nextCrash) {
+            Sim sim = victim(false);
+            if (sim != null) {
+                crash(sim);
+                crashes++;
+                nextCrash += CRASH_EVERY;
+            }
+        }
+        // crashed players are replaced one at a time, so that the moves go on meanwhile
+        if (live.size() < players) {
+            join();
+        }
+    }
+
+    public void run(int players, int seconds) throws InterruptedException {
+        populate(players);
+
+        ScheduledExecutorService movers = Executors.newScheduledThreadPool(MOVERS, Threads.factory("sim-mover"));
+        for (int m = 0; m < MOVERS; m++) {
+            movers.scheduleAtFixedRate(new Mover(SEED + 1 + m), 10, 10, TimeUnit.MILLISECONDS);
+        }
+        long start = System.nanoTime();
+        long end = System.currentTimeMillis() + seconds * 1000L;
+        while (System.currentTimeMillis() < end) {
+            chaos(players);
+            Thread.sleep(10);
+        }
+        movers.shutdown();
+        movers.awaitTermination(1, TimeUnit.SECONDS);
+        double took = (System.nanoTime() - start) / 1e9;
+        console.printf("ran %d s: %d moves sent, %.0f moves/s of %.0f wanted, %s%n",
+                seconds, moves.get(), moves.get() / took, MOVE_RATE * players, summary());
+    }
+
+    /**
+     * Mover sends its share of the moves, to players picked at random. Run every few milliseconds,
+     * it sends the moves that came due since it last ran.
+     */
+    private class Mover implements Runnable {
+        private final Move[] directions = Move.values();
+        private final Random random;
+        private double credit;
+        private long last = System.nanoTime();
+
+        Mover(long seed) {
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public void run() {
+            Sim[] sims = players;
+            long now = System.nanoTime();
+            credit += MOVE_RATE * sims.length / MOVERS * (now - last) / 1e9;
+            last = now;
+            for (; credit >= 1 && sims.length > 0; credit--) {
+                try {
+                    sims[random.nextInt(sims.length)].player.sendMove(directions[random.nextInt(directions.length)]);
+                    moves.incrementAndGet();
+                } catch (RejectedExecutionException e) {
+                    // crashed since we looked, the move is lost with it
+                }
+            }
+        }
+    }
+
+    // summary sums up the crashes and joins so far
+    String summary() {
+        return crashes + " crashes, " + failovers + " failovers, " + joins + " joins, " + failedJoins + " failed joins";
+    }
+
+    // pace sleeps until `done` calls fit in `rate` per second since `start`
+    private static void pace(long start, int done, double rate) throws InterruptedException {
+        long due = start + (long) (done / rate * 1e9);
+        long wait = (due - System.nanoTime()) / 1000000;
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+    }
+
+    /**
+     * settle checks the game until it is consistent or SETTLE has passed, and returns the problems
+     * found on the last check.
+     */
+    public List<String> settle() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        List<String> problems = check();
+        while (!problems.isEmpty() && System.currentTimeMillis() - start < SETTLE) {
+            Thread.sleep(200);
+            problems = check();
+        }
+        if (problems.isEmpty()) {
+            console.printf("consistent after %.1f s%n", (System.currentTimeMillis() - start) / 1e3);
+        } else {
+            console.printf("not consistent after %.1f s:%n", SETTLE / 1e3);
+            for (String p : problems) {
+                console.println("  " + p);
+            }
+        }
+        return problems;
+    }
+
+    private List<String> check() {
+        List<String> problems = new ArrayList<>();
+        try {
+            Map<String, Sim> byName = new HashMap<>();
+            for (Sim sim : live) {
+                byName.put(sim.name, sim);
+            }
+            Set<String> listed = new HashSet<>();
+            for (int s = 0; s < shards.count(); s++) {
+                checkShard(s, byName, listed, problems);
+            }
+            for (Sim sim : live) {
+                if (!listed.contains(sim.name)) {
+                    problems.add(sim.name + " is in no game");
+                }
+            }
+        } catch (RuntimeException e) {
+            // a state changed under us, the next check sees it settled
+            problems.add("check failed: " + e);
+        }
+        return problems;
+    }
+
+    private void checkShard(int s, Map<String, Sim> byName, Set<String> listed, List<String> problems) {
+        List<Sim> primaries = new ArrayList<>();
+        for (Sim sim : live) {
+            State state = sim.player.state;
+            if (sim.player.getPlayerType() == PlayerType.Primary && state != null && state.getShard() == s) {
+                primaries.add(sim);
+            }
+        }
+        Roster roster = tracker.roster(s);
+        if (primaries.isEmpty()) {
+            for (int i = 0; i < roster.size(); i++) {
+                if (byName.containsKey(roster.nameAt(i))) {
+                    problems.add("shard " + s + " has players but no primary");
+                    break;
+                }
+            }
+            return;
+        }
+        if (primaries.size() > 1) {
+            StringBuilder b = new StringBuilder("shard " + s + " has " + primaries.size() + " primaries:");
+            for (Sim sim : primaries) {
+                b.append(" ").append(sim.name);
+            }
+            problems.add(b.toString());
+        }
+
+        Sim primary = primaries.get(0);
+        State state = primary.player.state;
+        Set<String> names = new HashSet<>();
+        Set<Integer> cells = new HashSet<>();
+        for (int i = 0; i < state.playerCount(); i++) {
+            String name = state.nameAt(i);
+            names.add(name);
+            if (!byName.containsKey(name)) {
+                problems.add("crashed " + name + " is still in shard " + s);
+            }
+            if (!listed.add(name)) {
+                problems.add(name + " is in more than one shard");
+            }
+            if (!cells.add(state.xAt(i) * N + state.yAt(i))) {
+                problems.add(name + " shares its cell in shard " + s);
+            }
+        }
+        if (!state.nameAt(0).equals(primary.name)) {
+            problems.add("primary " + primary.name + " of shard " + s + " lists " + state.nameAt(0) + " first");
+        }
+
+        if (state.playerCount() > 1) {
+            Sim backup = byName.get(state.nameAt(1));
+            State backupState = backup == null ? null : backup.player.state;
+            if (backup == null || backup.player.getPlayerType() != PlayerType.Backup) {
+                problems.add("shard " + s + " has no backup");
+            } else if (backupState == null || backupState.getShard() != s || backupState.getEpoch() != state.getEpoch()
+                    || backupState.count != state.count) {
+                problems.add("backup " + backup.name + " of shard " + s + " is at version "
+                        + (backupState == null ? -1 : backupState.count) + ", primary at " + state.count
+                        + (backupState != null && backupState.getEpoch() != state.getEpoch() ? " of another game" : ""));
+            }
+        }
+
+        int room = (state.getRegion().x1 - state.getRegion().x0) * (state.getRegion().y1 - state.getRegion().y0) - state.playerCount();
+        int expected = shards.treasuresPerShard(K);
+        if (room >= expected && state.treasureCount() != expected) {
+            problems.add("shard " + s + " has " + state.treasureCount() + " treasures, not " + expected);
+        }
+
+        for (int i = 0; i < roster.size(); i++) {
+            String name = roster.nameAt(i);
+            if (!byName.containsKey(name)) {
+                problems.add("crashed " + name + " is still on the tracker in shard " + s);
+            } else if (!names.contains(name)) {
+                problems.add(name + " is on the tracker in shard " + s + " but not in its game");
+            }
+        }
+        for (String name : names) {
+            if (!roster.contains(name)) {
+                problems.add(name + " is in shard " + s + " but not on the tracker");
+            }
+        }
+    }
+
+    void report() {
+        for (int s = 0; s < shards.count(); s++) {
+            for (Sim sim : live) {
+                State state = sim.player.state;
+                if (sim.player.getPlayerType() == PlayerType.Primary && state != null && state.getShard() == s) {
+                    console.printf("shard %d: primary %s, %d players, version %d%n", s, sim.name, state.playerCount(), state.count);
+                    break;
+                }
+            }
+        }
+        Runtime rt = Runtime.getRuntime();
+        // virtual threads are not counted, they are what maze.threads=virtual saves
+        console.printf("%d platform threads, %d MB heap used%n", ManagementFactory.getThreadMXBean().getThreadCount(), (rt.totalMemory() - rt.freeMemory()) >> 20);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: java Simulator <players> [seconds] [N] [K]");
+            System.exit(1);
+        }
+        // every node lives in this JVM, before anything reads Config
+        System.setProperty("maze.transport", "loopback");
+        int players = Integer.parseInt(args[0]);
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int n = args.length > 2 ? Integer.parseInt(args[2]) : Math.max(15, (int) Math.ceil(Math.sqrt(players * 4.0)));
+        int k = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        // the players print every call that failed, e.g. to a crashed player, which would drown the simulator's own output
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {}
+        }));
+
+        console.printf("%d players on a %d x %d maze with %d treasures, %d shards%n",
+                players, n, n, k, new ShardMap(n, Config.SHARDS_PER_SIDE).count());
+        Simulator sim = new Simulator(n, k, console);
+        sim.run(players, seconds);
+        List<String> problems = sim.settle();
+        sim.report();
+        System.exit(problems.isEmpty() ? 0 : 1);
+    }
+}
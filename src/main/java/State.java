@@ -1,184 +1,694 @@
 import java.awt.*;
-import java.io.Serializable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * State represents the local game state.
  * players provide information of each player's score and location
  * treasures provide information of each treasure's location
+ *
+ * Players and treasures are kept column by column in int arrays, so a move changes a few ints
+ * in place. They are read through nameAt, xAt, yAt, scoreAt and treasureXAt, treasureYAt.
  */
-public class State implements Serializable {
-    // index 0 is primary, index 1 is backup - when rendering on GUI
-    public Vector<PlayerInfo> players;
-    public Vector<Position> treasures;
+public class State implements Externalizable {
+    private static final long serialVersionUID = Wire.FORMAT;
+
+    // index 0 is primary, index 1 is backup - when rendering on GUI. only the first `size` are in use
+    private String[] names;
+    private int[] xs;
+    private int[] ys;
+    private int[] scores;
+    private int size;
+    // treasure j is at (txs[j], tys[j]). there are K of them unless the maze is full
+    private int[] txs;
+    private int[] tys;
+    private int treasureCount;
     public Vector<Player> playerRefs;
 
+    // count is the version of the state. it is bumped on every write.
     public int count;
-    private final int N;
-    private final int K;
+    private int N;
+    private int K;
+    /**
+     * epoch names the game this state is a version of. A game created anew, e.g. once a shard lost
+     * its primary and backup together, starts counting again, so `count` alone does not tell two
+     * states apart: the same count of two epochs are different states.
+     */
+    private long epoch;
+
+    // the shard this state is played on and its part of the maze, the whole maze unless sharded
+    private int shard;
+    private ShardMap.Region region;
+
+    // changes made since the last takeDelta, shipped to the backup by the primary
+    private transient StateDelta pending;
+
+    // occupancy index of players and treasures, derived from the arrays above
+    private transient Grid grid;
+    private transient Random random;
+    // writes down the calls made on this state, null unless it is being recorded
+    private transient Recorder recorder;
+
+    // name -> index in the players / playerRefs. removals shift the indices after the leaver.
+    private transient HashMap<String, Integer> slots;
+
+    // identifies this state to its snapshots, which keep the token rather than the state
+    private final transient Object token = new Object();
+    // set on a snapshot: the token of the state it was copied from, and its encoding once written
+    private transient Object of;
+    private transient volatile byte[] encoded;
+
+    // required by Externalizable
+    public State() {}
 
     public State(Player ref, String name, int n, int k) {
+        this(ref, name, n, k, new ShardMap(n, 1), 0, null, 0);
+    }
+
+    /**
+     * State creates the game of one shard, with the primary at `at` (random if null) keeping `score`.
+     */
+    public State(Player ref, String name, int n, int k, ShardMap shards, int shard, Position at, int score) {
         count = 0;
+        this.epoch = newEpoch();
         this.N = n;
         this.K = k;
-        this.treasures = new Vector<>();
-        this.players = new Vector<>();
+        this.shard = shard;
+        this.region = shards.region(shard);
+        this.names = new String[8];
+        this.xs = new int[8];
+        this.ys = new int[8];
+        this.scores = new int[8];
+        this.txs = new int[k];
+        this.tys = new int[k];
         this.playerRefs = new Vector<>();
+        this.grid = new Grid(n, this.region);
+        this.random = new Random();
+        this.slots = new HashMap<>();
 
         // assign primary to game state
-        this.addPlayer(ref, name);
+        if (at == null) {
+            this.addPlayer(ref, name);
+        } else {
+            this.addPlayerAt(ref, name, at.x, at.y, score);
+        }
 
         // randomly generate k treasures
         for(int j = 0; j < K; ++j) {
-            Position pos = randomPosition();
-            treasures.add(pos);
+            int cell = randomCell();
+            if (cell < 0) break;
+            txs[j] = grid.xOf(cell);
+            tys[j] = grid.yOf(cell);
+            treasureCount++;
+            grid.placeTreasure(txs[j], tys[j], j);
         }
+        count = 0;
+        pending = null;
     }
 
     public void pretty() {
         System.out.println("COUNT: " + count);
-        for (PlayerInfo p: players) {
-            System.out.print(p.name + " has score " + p.score + ". Now at "+ (p.pos.x + 1) + ", " + (p.pos.y + 1) + " | " );
+        for (int i = 0; i < size; i++) {
+            System.out.print(names[i] + " has score " + scores[i] + ". Now at "+ (xs[i] + 1) + ", " + (ys[i] + 1) + " | " );
+        }
+        for (int j = 0; j < treasureCount; j++) {
+            System.out.print("Treasure at "+ (txs[j] + 1) + ", " + (tys[j] + 1) + " |");
+        }
+    }
+
+    public int playerCount() {
+        return size;
+    }
+
+    public String nameAt(int i) {
+        return names[checkPlayer(i)];
+    }
+
+    public int xAt(int i) {
+        return xs[checkPlayer(i)];
+    }
+
+    public int yAt(int i) {
+        return ys[checkPlayer(i)];
+    }
+
+    public int scoreAt(int i) {
+        return scores[checkPlayer(i)];
+    }
+
+    // names is a read-only view of the players' names, in order
+    public List<String> names() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int i) {
+                return nameAt(i);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    public int treasureCount() {
+        return treasureCount;
+    }
+
+    public int treasureXAt(int j) {
+        return txs[checkTreasure(j)];
+    }
+
+    public int treasureYAt(int j) {
+        return tys[checkTreasure(j)];
+    }
+
+    // setScoreAt restores the score of the player at i, e.g. from a recovered game, without recording a change
+    void setScoreAt(int i, int score) {
+        scores[checkPlayer(i)] = score;
+    }
+
+    // the arrays are longer than in use, the slots past the end must not be read as players
+    private int checkPlayer(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("player " + i + " of " + size);
         }
-        for (Position t: treasures) {
-            System.out.print("Treasure at "+ (t.x + 1) + ", " + (t.y + 1) + " |");
+        return i;
+    }
+
+    private int checkTreasure(int j) {
+        if (j < 0 || j >= treasureCount) {
+            throw new IndexOutOfBoundsException("treasure " + j + " of " + treasureCount);
         }
+        return j;
     }
 
     public void addPlayer(Player ref, String name) {
+        addPlayer(ref, name, 0);
+    }
+
+    // addPlayer adds a player at a random cell with `score`, e.g. one it had in a recovered game
+    public void addPlayer(Player ref, String name, int score) {
+        if (recorder != null) {
+            recorder.added(name, score);
+        }
+        int cell = randomCell();
+        if (cell < 0) {
+            throw new IllegalStateException("maze is full, cannot add " + name);
+        }
+        join(ref, name, grid.xOf(cell), grid.yOf(cell), score);
+    }
+
+    /**
+     * resume takes over the treasures and the version of a game recovered from a journal.
+     * Treasures whose cell is taken keep the place they were given. The players are not taken over,
+     * they may well be gone.
+     */
+    public void resume(State recovered) {
+        for (int j = 0; j < treasureCount && j < recovered.treasureCount; j++) {
+            int x = recovered.txs[j];
+            int y = recovered.tys[j];
+            if (!grid.inBounds(x, y) || grid.hasPlayer(x, y) || grid.treasureAt(x, y) >= 0) continue;
+            grid.removeTreasure(txs[j], tys[j], j);
+            grid.placeTreasure(x, y, j);
+            txs[j] = x;
+            tys[j] = y;
+        }
+        count = Math.max(count, recovered.count);
+        // the game carries on from a version nobody has seen
+        epoch = newEpoch();
+    }
+
+    private static long newEpoch() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+    /**
+     * addPlayerAt adds a player handed off from another shard at (x, y), keeping its score.
+     * A treasure lying on the cell is collected. With no empty cell left to respawn it on, the player
+     * is refused: the treasure would stay under it and be lost once it moves on.
+     */
+    public void addPlayerAt(Player ref, String name, int x, int y, int score) {
+        if (recorder != null) {
+            recorder.addedAt(name, x, y, score);
+        }
+        if (!isNewPositionValid(x, y)) {
+            throw new IllegalStateException("cannot add " + name + " at " + x + ", " + y);
+        }
+        int j = grid.treasureAt(x, y);
+        if (j >= 0 && grid.freeCount() == 0) {
+            throw new IllegalStateException("cannot add " + name + " at " + x + ", " + y + ", no cell left for the treasure there");
+        }
+        join(ref, name, x, y, j >= 0 ? score + 1 : score);
+        if (j >= 0) {
+            respawnTreasure(j);
+        }
+    }
+
+    private void join(Player ref, String name, int x, int y, int score) {
+        append(ref, name, x, y, score);
+        record(StateDelta.Kind.Joined, name, x, y, score, ref);
+        count += 1;
+    }
+
+    // append puts a player at the end of the list, growing the arrays when they are full
+    private void append(Player ref, String name, int x, int y, int score) {
+        if (size == names.length) {
+            int grown = Math.max(8, size * 2);
+            names = Arrays.copyOf(names, grown);
+            xs = Arrays.copyOf(xs, grown);
+            ys = Arrays.copyOf(ys, grown);
+            scores = Arrays.copyOf(scores, grown);
+        }
+        names[size] = name;
+        xs[size] = x;
+        ys[size] = y;
+        scores[size] = score;
+        slots.put(name, size);
+        size++;
         playerRefs.add(ref);
-        players.add(new PlayerInfo(randomPosition(), name));
+        grid.placePlayer(x, y);
     }
 
     // lookups are done using player's name. we assume unique for now. we can add checks later
     public void move(Move move, String caller) {
-        int i;
-        for (i = 0; i < players.size(); i++) {
-            if (players.get(i).name.equals(caller)){
-                break;
-            }
+        if (recorder != null) {
+            recorder.moved(caller, move);
+        }
+        int i = indexOf(caller);
+        if (i < 0) {
+            Trace.event(Trace.Kind.MOVE_REJECTED, primaryName(), caller, 0);
+            return;
         }
 
-        PlayerInfo moving = players.get(i);
-
-        Position newPosition;
+        int x = xs[i];
+        int y = ys[i];
         switch (move) {
             case Up:
-                newPosition = new Position(moving.pos.x, moving.pos.y - 1);
+                y -= 1;
                 break;
             case Down:
-                newPosition = new Position(moving.pos.x, moving.pos.y + 1);
+                y += 1;
                 break;
             case Right:
-                newPosition = new Position(moving.pos.x + 1, moving.pos.y);
+                x += 1;
                 break;
             default:
-                newPosition = new Position(moving.pos.x - 1, moving.pos.y);
+                x -= 1;
         }
 
-        if (isNewPositionValid(newPosition)) {
-            boolean foundTreasure = false;
-            int j;
-            for (j = 0; j < treasures.size(); j++) {
-                if (treasures.get(j).x == newPosition.x && treasures.get(j).y == newPosition.y) {
-                    moving.score += 1;
-                    foundTreasure = true;
-                    break;
-                }
-            }
+        if (isNewPositionValid(x, y)) {
+            grid.removePlayer(xs[i], ys[i]);
+            int j = grid.treasureAt(x, y);
+            grid.placePlayer(x, y);
 
-            if (foundTreasure) {
-                treasures.set(j, randomPosition());
-            }
+            xs[i] = x;
+            ys[i] = y;
+            record(StateDelta.Kind.Moved, caller, x, y, 0, null);
 
-            moving.pos = newPosition;
-            players.set(i, moving);
-            System.out.println("Score: " + moving.score);
+            if (j >= 0) {
+                scores[i] += 1;
+                record(StateDelta.Kind.Scored, caller, 0, 0, scores[i], null);
+                // there is always a free cell here, the one we just left
+                respawnTreasure(j);
+            }
+            Trace.event(Trace.Kind.MOVE_APPLIED, primaryName(), caller, scores[i]);
 
             count += 1;
             return;
         }
 
-        System.out.println("invalid move");
+        Trace.event(Trace.Kind.MOVE_BLOCKED, primaryName(), caller, 0);
+    }
+
+    // primaryName names the node tracing, the primary being the one that moves players
+    private String primaryName() {
+        return size == 0 ? null : names[0];
     }
 
     public void removePlayer(String leaver) {
-        int i;
-        boolean found = false;
-        for (i = 0; i < players.size(); i++) {
-            if (players.get(i).name.equals(leaver)) {
-                found = true;
-                break;
-            }
+        if (recorder != null) {
+            recorder.removed(leaver);
+        }
+        int i = indexOf(leaver);
+        if (i >= 0) {
+            grid.removePlayer(xs[i], ys[i]);
+            removeAt(i);
+            record(StateDelta.Kind.Left, leaver, 0, 0, 0, null);
+            count += 1;
         }
+    }
 
-        if (found) {
-            players.remove(i);
-            playerRefs.remove(i);
+    /**
+     * takeDelta returns the changes made since the last call, or null if nothing changed.
+     */
+    public StateDelta takeDelta() {
+        StateDelta delta = pending;
+        pending = null;
+        if (delta != null) {
+            delta.count = count;
         }
+        return delta;
     }
 
-    // isNewPositionValid checks if new position is out of bound and if any other player already occupies the spot.
-    private boolean isNewPositionValid(Position pos) {
-        if (pos.x < 0 || pos.x >= N || pos.y < 0 || pos.y >= N) {
+    /**
+     * apply replays a delta from the primary on top of this state.
+     * Returns false if the delta does not start at our version, the caller then needs a full snapshot.
+     */
+    public boolean apply(StateDelta delta) {
+        if (delta.shard != shard || delta.epoch != epoch || delta.base != count) {
             return false;
         }
 
-        for (PlayerInfo p: players) {
-            if (p.pos.x == pos.x && p.pos.y == pos.y) {
-                return false;
+        for (int k = 0; k < delta.size(); k++) {
+            String name = delta.nameAt(k);
+            int x = delta.xAt(k);
+            int y = delta.yAt(k);
+            int value = delta.valueAt(k);
+            int i = indexOf(name);
+            switch (delta.kindAt(k)) {
+                case Moved:
+                    if (i < 0) return false;
+                    grid.removePlayer(xs[i], ys[i]);
+                    grid.placePlayer(x, y);
+                    xs[i] = x;
+                    ys[i] = y;
+                    break;
+                case Scored:
+                    if (i < 0) return false;
+                    scores[i] = value;
+                    break;
+                case Treasure:
+                    if (value >= treasureCount) return false;
+                    grid.removeTreasure(txs[value], tys[value], value);
+                    grid.placeTreasure(x, y, value);
+                    txs[value] = x;
+                    tys[value] = y;
+                    break;
+                case Joined:
+                    append(delta.refAt(k), name, x, y, value);
+                    break;
+                case Left:
+                    if (i < 0) return false;
+                    grid.removePlayer(xs[i], ys[i]);
+                    removeAt(i);
+                    break;
             }
         }
 
+        count = delta.count;
         return true;
     }
 
-    private Position randomPosition() {
-        boolean isUnique = false;
-        int x = 0, y = 0;
+    private void respawnTreasure(int j) {
+        int cell = randomCell();
+        if (cell < 0) {
+            // not reached: a move frees the cell it leaves, and addPlayerAt refuses a full maze
+            return;
+        }
+        txs[j] = grid.xOf(cell);
+        tys[j] = grid.yOf(cell);
+        grid.placeTreasure(txs[j], tys[j], j);
+        record(StateDelta.Kind.Treasure, null, txs[j], tys[j], j, null);
+    }
 
-        while(!isUnique) {
-            Random random = new Random();
-            x = random.nextInt(N - 1);
-            y = random.nextInt(N - 1);
+    // record has the calls made on this state from now on written down by `recorder`
+    public void record(Recorder recorder) {
+        this.recorder = recorder;
+    }
 
-            isUnique = true;
+    public boolean isRecorded() {
+        return recorder != null;
+    }
 
-            for(Position t : treasures) {
-                if(x == t.x && y == t.y) {
-                    isUnique = false;
-                    break;
-                }
+    // reseed makes the random cells picked from now on follow from `seed` and this state alone, see Recorder
+    public void reseed(long seed) {
+        random = new Random(seed);
+        grid.sortFree();
+    }
+
+    // indexOf returns the position of the player in the list of players, -1 if not found
+    public int indexOf(String name) {
+        if (name == null) return -1;
+        if (slots == null) {
+            // a snapshot, which has no slots
+            for (int i = 0; i < size; i++) {
+                if (names[i].equals(name)) return i;
             }
+            return -1;
+        }
+        Integer i = slots.get(name);
+        return i == null ? -1 : i;
+    }
 
-            for(PlayerInfo p : players) {
-                if(x == p.pos.x && y == p.pos.y) {
-                    isUnique = false;
-                    break;
-                }
+    // removeAt keeps the order of the remaining players so index 0 stays primary and index 1 backup
+    private void removeAt(int i) {
+        slots.remove(names[i]);
+        int after = size - i - 1;
+        System.arraycopy(names, i + 1, names, i, after);
+        System.arraycopy(xs, i + 1, xs, i, after);
+        System.arraycopy(ys, i + 1, ys, i, after);
+        System.arraycopy(scores, i + 1, scores, i, after);
+        size--;
+        names[size] = null;
+        playerRefs.remove(i);
+        for (int k = i; k < size; k++) {
+            slots.put(names[k], k);
+        }
+    }
+
+    // record adds a change to the pending delta, into its arrays rather than as an object per change
+    private void record(StateDelta.Kind kind, String name, int x, int y, int value, Player ref) {
+        if (pending == null) {
+            pending = new StateDelta(shard, epoch, count);
+        }
+        pending.add(kind, name, x, y, value, ref);
+    }
+
+    // isNewPositionValid checks if new position is out of bound and if any other player already occupies the spot.
+    private boolean isNewPositionValid(int x, int y) {
+        return grid.inBounds(x, y) && !grid.hasPlayer(x, y);
+    }
+
+    // randomPosition picks an empty cell, null if the maze is full. package-private for the benchmarks
+    Position randomPosition() {
+        int cell = randomCell();
+        if (cell < 0) {
+            return null;
+        }
+        return new Position(grid.xOf(cell), grid.yOf(cell));
+    }
+
+    // randomCell picks an empty cell of the grid, -1 if the maze is full
+    private int randomCell() {
+        if (random == null) {
+            random = new Random();
+        }
+        return grid.randomFree(random);
+    }
+
+    /**
+     * snapshot copies the state as it is at this version, to be read and sent without the lock.
+     * A snapshot must not be changed: its encoding is kept once written and reused for every caller.
+     * Only the arrays are copied. It has no grid and no slots, which only writes need.
+     */
+    public State snapshot() {
+        State copy = new State();
+        copy.count = count;
+        copy.epoch = epoch;
+        copy.N = N;
+        copy.K = K;
+        copy.shard = shard;
+        copy.region = region;
+        copy.names = Arrays.copyOf(names, size);
+        copy.xs = Arrays.copyOf(xs, size);
+        copy.ys = Arrays.copyOf(ys, size);
+        copy.scores = Arrays.copyOf(scores, size);
+        copy.size = size;
+        copy.txs = Arrays.copyOf(txs, treasureCount);
+        copy.tys = Arrays.copyOf(tys, treasureCount);
+        copy.treasureCount = treasureCount;
+        copy.playerRefs = new Vector<>(playerRefs);
+        copy.of = token;
+        return copy;
+    }
+
+    // isSnapshotOf tells whether this is a snapshot of `live` at its current version
+    public boolean isSnapshotOf(State live) {
+        return of == live.token && count == live.count;
+    }
+
+    /**
+     * writeExternal packs the players column by column (names, xs, ys, scores) with varints,
+     * followed by the treasures and the players' refs. The grid and the slots are not sent, they
+     * are rebuilt by readExternal. A snapshot encodes all but the refs once.
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        if (of == null) {
+            writeBody(out);
+        } else {
+            byte[] body = encoded;
+            if (body == null) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                writeBody(new DataOutputStream(bytes));
+                body = bytes.toByteArray();
+                encoded = body;
             }
+            out.write(body);
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeObject(playerRefs.get(i));
+        }
+    }
+
+    private void writeBody(DataOutput out) throws IOException {
+        Wire.writeHeader(out);
+        Wire.writeVarint(out, count);
+        out.writeLong(epoch);
+        Wire.writeVarint(out, N);
+        Wire.writeVarint(out, K);
+        Wire.writeVarint(out, shard);
+        Wire.writeVarint(out, region.x0);
+        Wire.writeVarint(out, region.y0);
+        Wire.writeVarint(out, region.x1);
+        Wire.writeVarint(out, region.y1);
+
+        Wire.writeVarint(out, size);
+        for (int i = 0; i < size; i++) {
+            out.writeUTF(names[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            Wire.writeVarint(out, xs[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            Wire.writeVarint(out, ys[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            Wire.writeVarint(out, scores[i]);
         }
 
-        return new Position(x, y);
+        Wire.writeVarint(out, treasureCount);
+        for (int j = 0; j < treasureCount; j++) {
+            Wire.writeVarint(out, txs[j]);
+        }
+        for (int j = 0; j < treasureCount; j++) {
+            Wire.writeVarint(out, tys[j]);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        Wire.readHeader(in, "State");
+        count = Wire.readVarint(in);
+        epoch = in.readLong();
+        N = Wire.readVarint(in);
+        K = Wire.readVarint(in);
+        shard = Wire.readVarint(in);
+        region = new ShardMap.Region(Wire.readVarint(in), Wire.readVarint(in), Wire.readVarint(in), Wire.readVarint(in));
+
+        size = Wire.readVarint(in);
+        names = new String[size];
+        xs = new int[size];
+        ys = new int[size];
+        scores = new int[size];
+        for (int i = 0; i < size; i++) {
+            names[i] = in.readUTF();
+        }
+        for (int i = 0; i < size; i++) {
+            xs[i] = Wire.readVarint(in);
+        }
+        for (int i = 0; i < size; i++) {
+            ys[i] = Wire.readVarint(in);
+        }
+        for (int i = 0; i < size; i++) {
+            scores[i] = Wire.readVarint(in);
+        }
+
+        treasureCount = Wire.readVarint(in);
+        txs = new int[treasureCount];
+        tys = new int[treasureCount];
+        for (int j = 0; j < treasureCount; j++) {
+            txs[j] = Wire.readVarint(in);
+        }
+        for (int j = 0; j < treasureCount; j++) {
+            tys[j] = Wire.readVarint(in);
+        }
+        playerRefs = new Vector<>(size);
+        for (int i = 0; i < size; i++) {
+            playerRefs.add((Player) in.readObject());
+        }
+        index();
+    }
+
+    // index rebuilds the grid and the slots from the arrays
+    private void index() {
+        grid = new Grid(N, region);
+        slots = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            grid.placePlayer(xs[i], ys[i]);
+            slots.put(names[i], i);
+        }
+        for (int j = 0; j < treasureCount; j++) {
+            grid.placeTreasure(txs[j], tys[j], j);
+        }
     }
 
     public void draw(Graphics g, int spacing, int cellSize, int offset) {
-        int i = 0;
         Font f = new Font("Arial", Font.BOLD, cellSize/2);
         g.setFont(f);
-        for (PlayerInfo playerInfo: players) {
-            playerInfo.draw(g, spacing, cellSize, offset, i);
-            i++;
+        for (int i = 0; i < size; i++) {
+            //Draw the name into the maze
+            g.setColor(Color.black);
+            g.drawString(names[i],  offset + xs[i] * cellSize + cellSize/4, (ys[i]+1) * cellSize - spacing);
+
+            // Draw player's name
+            g.drawString(names[i], cellSize, (i+1) * cellSize);
+
+            // Draw player's score
+            g.setColor(Color.RED);
+            g.drawString(Integer.toString(scores[i]), cellSize * 2, (i+1) * cellSize);
+
+            // Draw whether the player is server or not
+            if (i == 0) {
+                g.drawString("Primary Server", cellSize * 3, (i+1) * cellSize);
+            }
+            if (i == 1) {
+                g.drawString("Backup Server", cellSize * 3, (i+1) * cellSize);
+            }
         }
         g.setFont(f.deriveFont(Font.BOLD, cellSize));
         g.setColor(Color.black);
-        for (Position treasure: treasures) {
-            treasure.draw(g, spacing, cellSize, offset);
+        for (int j = 0; j < treasureCount; j++) {
+            g.drawString("*", offset + txs[j] * cellSize + cellSize/4, spacing + (tys[j]+1) * cellSize);
         }
     }
 
     public int getN() {
         return this.N;
     }
+
+    public int getShard() {
+        return this.shard;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public ShardMap.Region getRegion() {
+        return this.region;
+    }
 }
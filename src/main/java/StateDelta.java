@@ -0,0 +1,217 @@
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+
+/**
+ * StateDelta holds the changes that take the State of a shard from version `base` to version `count`,
+ * within the game named by `epoch` (see State).
+ * The primary ships it to the backup instead of the whole State.
+ */
+public class StateDelta implements Externalizable {
+    private static final long serialVersionUID = Wire.FORMAT;
+
+    public enum Kind {
+        Moved,    // name moved to (x, y)
+        Scored,   // name now has score `value`
+        Treasure, // treasure at index `value` respawned at (x, y)
+        Joined,   // name (ref) joined at (x, y) with score `value`
+        Left      // name left the game
+    }
+
+    public int shard;
+    public long epoch;
+    public int base;
+    public int count;
+
+    // the changes, one per index up to size, column by column as in State so that recording one
+    // allocates nothing once the arrays have grown. unused fields of a change are 0 or null
+    private int size;
+    private Kind[] kinds;
+    private String[] names;
+    private int[] xs;
+    private int[] ys;
+    private int[] values;
+    private Player[] refs;
+
+    private static final Kind[] NO_KINDS = new Kind[0];
+    private static final String[] NO_NAMES = new String[0];
+    private static final int[] NO_INTS = new int[0];
+    private static final Player[] NO_REFS = new Player[0];
+
+    // required by Externalizable
+    public StateDelta() {
+        this.kinds = NO_KINDS;
+        this.names = NO_NAMES;
+        this.xs = NO_INTS;
+        this.ys = NO_INTS;
+        this.values = NO_INTS;
+        this.refs = NO_REFS;
+    }
+
+    public StateDelta(int shard, long epoch, int base) {
+        this();
+        this.shard = shard;
+        this.epoch = epoch;
+        this.base = base;
+        this.count = base;
+    }
+
+    // add appends a change, growing the arrays when they are full
+    public void add(Kind kind, String name, int x, int y, int value, Player ref) {
+        if (size == kinds.length) {
+            grow(Math.max(8, size * 2));
+        }
+        kinds[size] = kind;
+        names[size] = name;
+        xs[size] = x;
+        ys[size] = y;
+        values[size] = value;
+        refs[size] = ref;
+        size++;
+    }
+
+    // addAll appends the changes of `other`
+    public void addAll(StateDelta other) {
+        if (size + other.size > kinds.length) {
+            grow(Math.max(8, Math.max(size * 2, size + other.size)));
+        }
+        System.arraycopy(other.kinds, 0, kinds, size, other.size);
+        System.arraycopy(other.names, 0, names, size, other.size);
+        System.arraycopy(other.xs, 0, xs, size, other.size);
+        System.arraycopy(other.ys, 0, ys, size, other.size);
+        System.arraycopy(other.values, 0, values, size, other.size);
+        System.arraycopy(other.refs, 0, refs, size, other.size);
+        size += other.size;
+    }
+
+    private void grow(int capacity) {
+        kinds = Arrays.copyOf(kinds, capacity);
+        names = Arrays.copyOf(names, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        values = Arrays.copyOf(values, capacity);
+        refs = Arrays.copyOf(refs, capacity);
+    }
+
+    // size is the number of changes
+    public int size() {
+        return size;
+    }
+
+    public Kind kindAt(int i) {
+        return kinds[i];
+    }
+
+    public String nameAt(int i) {
+        return names[i];
+    }
+
+    public int xAt(int i) {
+        return xs[i];
+    }
+
+    public int yAt(int i) {
+        return ys[i];
+    }
+
+    // valueAt is the score of Scored and Joined, the treasure's index of Treasure
+    public int valueAt(int i) {
+        return values[i];
+    }
+
+    public Player refAt(int i) {
+        return refs[i];
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        Wire.writeHeader(out);
+        Wire.writeVarint(out, shard);
+        out.writeLong(epoch);
+        Wire.writeVarint(out, base);
+        Wire.writeVarint(out, count);
+        Wire.writeVarint(out, size);
+        for (int i = 0; i < size; i++) {
+            out.writeByte(kinds[i].ordinal());
+            switch (kinds[i]) {
+                case Moved:
+                    out.writeUTF(names[i]);
+                    Wire.writeVarint(out, xs[i]);
+                    Wire.writeVarint(out, ys[i]);
+                    break;
+                case Scored:
+                    out.writeUTF(names[i]);
+                    Wire.writeVarint(out, values[i]);
+                    break;
+                case Treasure:
+                    Wire.writeVarint(out, values[i]);
+                    Wire.writeVarint(out, xs[i]);
+                    Wire.writeVarint(out, ys[i]);
+                    break;
+                case Joined:
+                    out.writeUTF(names[i]);
+                    Wire.writeVarint(out, xs[i]);
+                    Wire.writeVarint(out, ys[i]);
+                    Wire.writeVarint(out, values[i]);
+                    out.writeObject(refs[i]);
+                    break;
+                case Left:
+                    out.writeUTF(names[i]);
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        Wire.readHeader(in, "StateDelta");
+        shard = Wire.readVarint(in);
+        epoch = in.readLong();
+        base = Wire.readVarint(in);
+        count = Wire.readVarint(in);
+        int n = Wire.readVarint(in);
+        size = 0;
+        grow(n);
+        Kind[] all = Kind.values();
+        for (int i = 0; i < n; i++) {
+            int ordinal = in.readUnsignedByte();
+            if (ordinal >= all.length) {
+                throw new InvalidObjectException("StateDelta has an op of unknown kind " + ordinal);
+            }
+            Kind kind = all[ordinal];
+            switch (kind) {
+                case Moved: {
+                    String name = in.readUTF();
+                    int x = Wire.readVarint(in);
+                    add(kind, name, x, Wire.readVarint(in), 0, null);
+                    break;
+                }
+                case Scored: {
+                    String name = in.readUTF();
+                    add(kind, name, 0, 0, Wire.readVarint(in), null);
+                    break;
+                }
+                case Treasure: {
+                    int idx = Wire.readVarint(in);
+                    int x = Wire.readVarint(in);
+                    add(kind, null, x, Wire.readVarint(in), idx, null);
+                    break;
+                }
+                case Joined: {
+                    String name = in.readUTF();
+                    int x = Wire.readVarint(in);
+                    int y = Wire.readVarint(in);
+                    int score = Wire.readVarint(in);
+                    add(kind, name, x, y, score, (Player) in.readObject());
+                    break;
+                }
+                case Left:
+                    add(kind, in.readUTF(), 0, 0, 0, null);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * StateUpdate is the answer to a conditional read (Player.getSince).
+ * It holds nothing if the reader is up to date, the changes since the reader's version,
+ * or the whole State when those are no longer at hand.
+ */
+public class StateUpdate implements Externalizable {
+    private static final long serialVersionUID = Wire.FORMAT;
+
+    private static final int NOT_MODIFIED = 0;
+    private static final int CHANGES = 1;
+    private static final int SNAPSHOT = 2;
+
+    public StateDelta delta;
+    public State state;
+
+    // required by Externalizable
+    public StateUpdate() {}
+
+    public static StateUpdate notModified() {
+        return new StateUpdate();
+    }
+
+    public static StateUpdate changes(StateDelta delta) {
+        StateUpdate update = new StateUpdate();
+        update.delta = delta;
+        return update;
+    }
+
+    public static StateUpdate snapshot(State state) {
+        StateUpdate update = new StateUpdate();
+        update.state = state;
+        return update;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        Wire.writeHeader(out);
+        if (state != null) {
+            out.writeByte(SNAPSHOT);
+            state.writeExternal(out);
+        } else if (delta != null) {
+            out.writeByte(CHANGES);
+            delta.writeExternal(out);
+        } else {
+            out.writeByte(NOT_MODIFIED);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        Wire.readHeader(in, "StateUpdate");
+        switch (in.readUnsignedByte()) {
+            case SNAPSHOT:
+                state = new State();
+                state.readExternal(in);
+                break;
+            case CHANGES:
+                delta = new StateDelta();
+                delta.readExternal(in);
+                break;
+            default:
+                break;
+        }
+    }
+}
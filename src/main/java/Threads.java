@@ -0,0 +1,129 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * Threads makes the threads a node runs its requests and background tasks on.
+ *
+ * With -Dmaze.threads=virtual they are virtual threads, so that calls blocked on a slow peer do not
+ * each hold an OS thread, and one host can run many players. Virtual threads need Java 21. The build
+ * targets Java 8, so they are reached by reflection, and on an older JDK we fall back to platform
+ * threads, as made by default.
+ */
+public class Threads {
+    // Thread.ofVirtual, Thread.Builder.name and .factory, Executors.newThreadPerTaskExecutor. null unless virtual threads are on
+    private static Method ofVirtual;
+    private static Method builderName;
+    private static Method builderFactory;
+    private static Method threadPerTask;
+
+    public static final boolean VIRTUAL = lookup();
+
+    /**
+     * inherit is given each factory of virtual threads as it is made, on the thread making it, and
+     * returns the factory to use. LoopbackTransport sets it, so that the threads belong to that thread's node.
+     */
+    static volatile UnaryOperator<ThreadFactory> inherit = UnaryOperator.identity();
+
+    private static boolean lookup() {
+        if (!"virtual".equals(Config.THREADS)) return false;
+        try {
+            // the public interface, the builders themselves are not accessible
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builder.getMethod("name", String.class);
+            builderFactory = builder.getMethod("factory");
+            threadPerTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return true;
+        } catch (ReflectiveOperationException e) {
+            System.out.println("virtual threads need Java 21, running on " + System.getProperty("java.version") + " with platform threads");
+            return false;
+        }
+    }
+
+    /**
+     * factory makes daemon threads called `name`, in `group` if they are platform threads.
+     * Virtual threads are all in a group of their own.
+     */
+    public static ThreadFactory factory(ThreadGroup group, String name) {
+        if (VIRTUAL) {
+            try {
+                Object builder = builderName.invoke(ofVirtual.invoke(null), name);
+                return inherit.apply((ThreadFactory) builderFactory.invoke(builder));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("cannot make virtual threads", e);
+            }
+        }
+        return r -> {
+            Thread t = new Thread(group, r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    public static ThreadFactory factory(String name) {
+        return factory(Thread.currentThread().getThreadGroup(), name);
+    }
+
+    // start runs `task` on a new daemon thread called `name`
+    public static Thread start(String name, Runnable task) {
+        Thread t = factory(name).newThread(task);
+        t.start();
+        return t;
+    }
+
+    // startPlatform is start on a platform thread even with virtual threads on, for a loop that is never idle for long
+    public static Thread startPlatform(String name, Runnable task) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    /**
+     * perTask runs every task it is given on a thread of its own. Platform threads are kept for
+     * the next tasks a while, virtual threads are cheap enough to make each time.
+     */
+    public static ExecutorService perTask(ThreadGroup group, String name) {
+        ThreadFactory factory = factory(group, name);
+        if (VIRTUAL) {
+            try {
+                return (ExecutorService) threadPerTask.invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("cannot make virtual threads", e);
+            }
+        }
+        return Executors.newCachedThreadPool(factory);
+    }
+
+    public static ExecutorService perTask(String name) {
+        return perTask(Thread.currentThread().getThreadGroup(), name);
+    }
+
+    /**
+     * bounded runs tasks on at most `threads` threads at a time, the others wait their turn.
+     * The threads go away when there is nothing to do.
+     */
+    public static ExecutorService bounded(String name, int threads) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), factory(name));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    // single runs tasks one after the other, on a daemon thread
+    public static ExecutorService single(String name) {
+        return Executors.newSingleThreadExecutor(factory(name));
+    }
+
+    // scheduler runs timed tasks one after the other, on a daemon thread
+    public static ScheduledExecutorService scheduler(String name) {
+        return Executors.newScheduledThreadPool(1, factory(name));
+    }
+}
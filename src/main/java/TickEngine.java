@@ -0,0 +1,143 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TickEngine runs the primary's writes on one game loop thread, in ticks of Config.TICK_MS.
+ *
+ * Threads serving calls do not touch the state, they queue a command and wait for its tick.
+ * Each tick the loop takes everything queued, in the order it arrived, and hands it to the owner,
+ * which applies it all under a single hold of the write lock and replicates it as one change.
+ * Then every caller gets its result. The lock stays for readers and for the role changes of the
+ * player, which do not go through the loop, but writers no longer queue up on it one by one.
+ *
+ * The queue holds at most Config.TICK_QUEUE commands. Past that, calls are rejected rather than
+ * left to wait, like Replicator does when shedding.
+ */
+public class TickEngine {
+    // a change to the state, run on the loop thread under the write lock
+    public interface Command<T> {
+        T apply() throws Exception;
+    }
+
+    static class Task {
+        private final Command<?> command;
+        private final CompletableFuture<Object> done = new CompletableFuture<>();
+        private Object result;
+        private Exception error;
+
+        Task(Command<?> command) {
+            this.command = command;
+        }
+
+        // apply runs the command, keeping what it returned or threw for the caller
+        void apply() {
+            try {
+                result = command.apply();
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+
+        void fail(Exception e) {
+            error = e;
+        }
+
+        private void complete() {
+            if (error != null) {
+                done.completeExceptionally(error);
+            } else {
+                done.complete(result);
+            }
+        }
+    }
+
+    private final PlayerImpl owner;
+    private final long tickNanos;
+    private final int capacity;
+    // many threads add, only the loop takes. `queued` bounds it without a lock
+    private final ConcurrentLinkedQueue<Task> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Thread loop;
+
+    public TickEngine(PlayerImpl owner, int tickMs, int capacity) {
+        this.owner = owner;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.capacity = capacity;
+        this.loop = Threads.startPlatform("game-loop", this::run);
+    }
+
+    // onLoop tells whether the caller is the loop thread, which must not queue and wait for itself
+    public boolean onLoop() {
+        return Thread.currentThread() == loop;
+    }
+
+    /**
+     * call queues `command` for the next tick and waits until it has been applied and replicated.
+     * It throws whatever the command threw.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T call(Command<T> command) throws Exception {
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            throw new Exception("game loop has " + capacity + " commands waiting, rejected");
+        }
+        Task task = new Task(command);
+        queue.add(task);
+        try {
+            return (T) task.done.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw (Error) cause;
+        }
+    }
+
+    public void stop() {
+        loop.interrupt();
+    }
+
+    private void run() {
+        List<Task> batch = new ArrayList<>();
+        long next = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            next += tickNanos;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else {
+                // a slow tick, start the next one now rather than run several back to back
+                next = System.nanoTime();
+            }
+
+            Task task;
+            while ((task = queue.poll()) != null) {
+                batch.add(task);
+            }
+            if (batch.isEmpty()) continue;
+            queued.addAndGet(-batch.size());
+            try {
+                owner.runTick(batch);
+                for (Task t : batch) {
+                    t.complete();
+                }
+            } catch (Throwable e) {
+                System.out.println("game loop: " + e.getMessage());
+                for (Task t : batch) {
+                    t.done.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+        // whoever is still waiting would wait forever
+        Task task;
+        while ((task = queue.poll()) != null) {
+            task.done.completeExceptionally(new Exception("game loop stopped"));
+        }
+    }
+}
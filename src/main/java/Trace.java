@@ -0,0 +1,113 @@
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Trace keeps the latest events of a node in memory, for looking into a failover after the fact.
+ *
+ * Events go into a ring of Config.TRACE_SIZE slots, the oldest being overwritten. Recording one takes
+ * no lock and no IO: a writer claims the next slot with one atomic increment and puts a small immutable
+ * event in it. A reader skips slots that were overwritten meanwhile.
+ * With tracing off (the default), event returns straight away and the JIT drops the call.
+ *
+ * The ring is written out by dump, served at /trace next to /metrics, and at exit with Config.TRACE_FILE.
+ */
+public class Trace {
+    public enum Kind {
+        // the primary applied a move of `subject`, `value` is its score
+        MOVE_APPLIED,
+        // a move of `subject` ran into a wall or a player
+        MOVE_BLOCKED,
+        // a move of `subject`, who is not in the game
+        MOVE_REJECTED,
+        // `subject` found its primary retiring and sent `value` moves to the backup instead
+        MOVE_RETIRING,
+        // the backup applied a move of `subject` while its primary retires
+        MOVE_SHADOWED,
+        // `value` moves of `subject` got no answer from its shard
+        MOVE_FAILED,
+        // the primary pushed version `value` to its backup `subject`
+        PUSH_SENT,
+        // a push of version `value` arrived
+        PUSH_RECEIVED,
+        // `subject` did not answer a ping
+        PING_TIMEOUT,
+        // `subject` was reported to the tracker as crashed
+        CRASH_REPORTED,
+        // the backup took over from its crashed primary `subject`, at version `value`
+        PROMOTED,
+        // the tracker dropped `subject`
+        UNREGISTERED
+    }
+
+    public static final boolean ON = Config.TRACE_SIZE > 0;
+
+    private static final AtomicReferenceArray<Event> ring;
+    private static final int mask;
+    private static final AtomicLong next = new AtomicLong();
+    // to turn nanoTime into wall clock time when dumping
+    private static final long startMillis = System.currentTimeMillis();
+    private static final long startNanos = System.nanoTime();
+
+    private static class Event {
+        final long seq;
+        final long nanos;
+        final Kind kind;
+        final String node;
+        final String subject;
+        final long value;
+
+        Event(long seq, long nanos, Kind kind, String node, String subject, long value) {
+            this.seq = seq;
+            this.nanos = nanos;
+            this.kind = kind;
+            this.node = node;
+            this.subject = subject;
+            this.value = value;
+        }
+    }
+
+    static {
+        // a power of two, so that the slot is a mask away from the sequence number
+        int size = ON ? Integer.highestOneBit(Math.max(2, Config.TRACE_SIZE) * 2 - 1) : 1;
+        ring = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+        if (ON && Config.TRACE_FILE != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try (PrintWriter out = new PrintWriter(Config.TRACE_FILE)) {
+                    dump(out);
+                } catch (Exception e) {
+                    System.out.println("cannot write trace to " + Config.TRACE_FILE + ": " + e.getMessage());
+                }
+            }));
+        }
+    }
+
+    /**
+     * event records that `node` saw `kind` happen to `subject`.
+     */
+    public static void event(Kind kind, String node, String subject, long value) {
+        if (!ON) return;
+        long seq = next.getAndIncrement();
+        ring.lazySet((int) (seq & mask), new Event(seq, System.nanoTime(), kind, node, subject, value));
+    }
+
+    /**
+     * dump writes the events in the ring, oldest first, one per line:
+     *     time seq node kind subject value
+     */
+    public static void dump(PrintWriter out) {
+        long last = next.get();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+        for (long seq = Math.max(0, last - ring.length()); seq < last; seq++) {
+            Event e = ring.get((int) (seq & mask));
+            // overwritten by a newer one, or not put in yet
+            if (e == null || e.seq != seq) continue;
+            Date at = new Date(startMillis + (e.nanos - startNanos) / 1000000);
+            out.println(format.format(at) + " " + seq + " " + e.node + " " + e.kind + " " + e.subject + " " + e.value);
+        }
+        out.flush();
+    }
+}
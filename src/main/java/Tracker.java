@@ -1,27 +1,44 @@
 import java.net.InetAddress;
-import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.server.UnicastRemoteObject;
-import java.rmi.registry.Registry;
-import java.util.Vector;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.UnaryOperator;
 
 public class Tracker implements TrackerRMI {
-    // players here should not have game state, just player info
-    private Vector<Player> players;
-    private Vector<String> playerIds;
+    // players here should not have game state, just player info. one roster per shard.
+    // rosters are swapped whole, so lookups and fetches take no lock
+    private final AtomicReferenceArray<Roster> rosters;
+    // where the rosters are kept across restarts, null unless maze.tracker.dir is set
+    private TrackerLog log;
+    private final ShardMap shards;
     private final int N;
     private final int K;
     private TrackerInfo trackerInfo;
 
-    private ReentrantLock lock = new ReentrantLock();
-
     public Tracker(int port, int N, int K, String name) {
-        this.players = new Vector<>();
-        this.playerIds = new Vector<>();
+        this.shards = new ShardMap(N, Config.SHARDS_PER_SIDE);
+        this.rosters = new AtomicReferenceArray<>(shards.count());
+        for (int s = 0; s < shards.count(); s++) {
+            rosters.set(s, Roster.EMPTY);
+        }
         this.N = N;
         this.K = K;
 
+        if (Config.TRACKER_DIR != null) {
+            try {
+                long start = System.nanoTime();
+                TrackerLog log = new TrackerLog(Config.TRACKER_DIR, shards.count());
+                Roster[] restored = log.restore();
+                int count = 0;
+                for (int s = 0; s < restored.length; s++) {
+                    rosters.set(s, restored[s]);
+                    count += restored[s].size();
+                }
+                this.log = log;
+                System.out.println("Restored " + count + " players from " + Config.TRACKER_DIR + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+            } catch (Exception e) {
+                System.out.println("cannot restore from " + Config.TRACKER_DIR + ", players are kept in memory only: " + e.getMessage());
+            }
+        }
+
         try {
             System.out.println("Tracker's IP Host Address: " + InetAddress.getLocalHost().getHostAddress());
             this.trackerInfo = new TrackerInfo(InetAddress.getLocalHost().getHostAddress(), port, name);
@@ -33,50 +50,118 @@ public class Tracker implements TrackerRMI {
     @Override
     public Bootstrap register(Player player, String name) {
         System.out.println("new player registering!");
-        try {
-            lock.lock();
-            players.addElement(player);
-            playerIds.addElement(name);
-            return new Bootstrap(players, N, K, trackerInfo);
-        } finally {
-            lock.unlock();
+        long start = System.nanoTime();
+        // new players go to the least crowded shard
+        int shard = 0;
+        for (int s = 1; s < shards.count(); s++) {
+            if (rosters.get(s).size() < rosters.get(shard).size()) {
+                shard = s;
+            }
         }
+        Bootstrap bs = bootstrap(shard, update(shard, r -> r.without(name).with(player, name)));
+        Metrics.REGISTER.since(start);
+        return bs;
     }
 
     @Override
     public void unregister(String name) {
-        try {
-            System.out.println("Remove crashed player from tracker " + name);
+        System.out.println("Remove crashed player from tracker " + name);
+        Metrics.UNREGISTER.increment();
+        Trace.event(Trace.Kind.UNREGISTERED, "tracker", name, 0);
+        for (int s = 0; s < shards.count(); s++) {
+            update(s, r -> r.without(name));
+        }
+    }
 
-            // lock for player lookup to avoid concurrency issue with multiple unregister
-            // even though crashes are spaced part with a minimal 3 second window.
-            lock.lock();
+    @Override
+    public Bootstrap fetch() {
+        return fetchShard(0);
+    }
 
-            int i;
-            for (i = 0; i < playerIds.size(); i++) {
-                if (playerIds.get(i).equals(name)) {
-                    break;
-                }
-            }
+    @Override
+    public Bootstrap fetchShard(int shard) {
+        return bootstrap(shard, rosters.get(shard));
+    }
 
-            // Prevent same deletion > once
-            if (i < playerIds.size()) {
-                players.remove(i);
-                playerIds.remove(i);
+    @Override
+    public Bootstrap enterShard(Player player, String name, int shard) {
+        System.out.println("Hand off " + name + " to shard " + shard);
+        return bootstrap(shard, update(shard, r -> r.contains(name) ? r : r.with(player, name)));
+    }
+
+    @Override
+    public void leaveShard(String name, int shard) {
+        update(shard, r -> r.without(name));
+    }
+
+    // update swaps in the roster `change` makes of the current one, retrying if another update got in first
+    private Roster update(int shard, UnaryOperator<Roster> change) {
+        if (log != null) {
+            return counted(updateLogged(shard, change));
+        }
+        while (true) {
+            Roster current = rosters.get(shard);
+            Roster next = change.apply(current);
+            if (next == current || rosters.compareAndSet(shard, current, next)) {
+                return counted(next);
             }
-        } finally {
-            lock.unlock();
         }
     }
 
-    @Override
-    public Bootstrap fetch() {
+    // counted updates the player count metric after a change and passes `next` through
+    private Roster counted(Roster next) {
+        int count = 0;
+        for (int s = 0; s < rosters.length(); s++) {
+            count += rosters.get(s).size();
+        }
+        Metrics.TRACKER_PLAYERS.set(count);
+        return next;
+    }
+
+    /**
+     * updateLogged is update with the change written to the log before it is answered.
+     * Changes are made one at a time, so that the log has them in the order they were made.
+     * Forcing them to disk is left out of the lock, so that one force covers all the changes waiting.
+     */
+    private Roster updateLogged(int shard, UnaryOperator<Roster> change) {
+        Roster next;
+        long seq;
+        synchronized (log) {
+            Roster current = rosters.get(shard);
+            next = change.apply(current);
+            if (next == current) return next;
+            try {
+                seq = log.append(shard, current, next);
+                rosters.set(shard, next);
+                if (log.needsCompaction()) {
+                    Roster[] all = new Roster[rosters.length()];
+                    for (int s = 0; s < all.length; s++) {
+                        all[s] = rosters.get(s);
+                    }
+                    log.compact(all);
+                }
+            } catch (Exception e) {
+                // keep serving from memory, the players matter more than the log
+                System.out.println("tracker log: " + e.getMessage());
+                rosters.set(shard, next);
+                return next;
+            }
+        }
         try {
-            lock.lock();
-            return new Bootstrap(players, N, K, trackerInfo);
-        } finally {
-            lock.unlock();
+            log.sync(seq);
+        } catch (Exception e) {
+            System.out.println("tracker log: " + e.getMessage());
         }
+        return next;
+    }
+
+    // roster returns who is in `shard`, for the Simulator's checks
+    Roster roster(int shard) {
+        return rosters.get(shard);
+    }
+
+    private Bootstrap bootstrap(int shard, Roster roster) {
+        return new Bootstrap(roster, N, K, trackerInfo, shards, shard);
     }
 
     public static void main(String[] args) {
@@ -89,27 +174,16 @@ public class Tracker implements TrackerRMI {
         int n = Integer.parseInt(args[1]);
         int k = Integer.parseInt(args[2]);
 
-        TrackerRMI stub = null;
-        Registry registry = null;
-
         try {
             String stubId= "TrackerRMI";
+            Metrics.serve(Config.METRICS_PORT);
             Tracker t = new Tracker(port, n, k, stubId);
-            stub = (TrackerRMI) UnicastRemoteObject.exportObject(t, 0);
-            registry = LocateRegistry.getRegistry(port);
-            registry.bind(stubId, stub);
+            Transport.get().exportTracker(t, port, stubId);
 
             System.out.println("Tracker Ready");
-        } catch (Exception e1) {
-            try {
-                registry.unbind("TrackerRMI");
-                registry.bind("TrackerRMI", stub);
-                System.out.println("Tracker Ready");
-            } catch (Exception e2) {
-                System.out.println("Tracker exception: " + e2.toString());
-                e2.printStackTrace();
-            }
-
+        } catch (Exception e) {
+            System.out.println("Tracker exception: " + e.toString());
+            e.printStackTrace();
         }
 
     }
@@ -1,13 +1,37 @@
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+public class TrackerInfo implements Externalizable {
+    private static final long serialVersionUID = Wire.FORMAT;
 
-public class TrackerInfo implements Serializable {
     public String host;
     public int port;
     public String name;
 
+    // required by Externalizable
+    public TrackerInfo() {}
+
     public TrackerInfo(String host, int port, String name) {
         this.host = host;
         this.port = port;
         this.name = name;
     }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        Wire.writeHeader(out);
+        out.writeUTF(host);
+        Wire.writeVarint(out, port);
+        out.writeUTF(name);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        Wire.readHeader(in, "TrackerInfo");
+        host = in.readUTF();
+        port = Wire.readVarint(in);
+        name = in.readUTF();
+    }
 }
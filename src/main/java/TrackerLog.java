@@ -0,0 +1,274 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Vector;
+import java.util.zip.CRC32;
+
+/**
+ * TrackerLog keeps the tracker's rosters on disk, so that a restarted tracker still knows the players.
+ *
+ * Every change is appended to a write-ahead log before the tracker answers. Appends go straight to the
+ * file, so they survive the tracker being killed. Forcing them to the disk is done once for all the
+ * appends waiting at that moment (group commit), when Config.TRACKER_FSYNC is on.
+ * Every COMPACT_AFTER records the rosters are written out whole and the log starts over.
+ *
+ * A restart reads the snapshot, then replays the log records written after it. Each record carries
+ * the epoch the roster had after it, so a restarted tracker goes on from the same epoch.
+ * A record cut short by a crash fails its checksum and is dropped, together with anything after it.
+ *
+ * Appends and compaction are not thread safe, the tracker makes them under the log's lock.
+ */
+public class TrackerLog {
+    private static final int COMPACT_AFTER = 1024;
+    private static final int ADD = 1;
+    private static final int REMOVE = 2;
+    // the roster moved on to the next epoch with the same players
+    private static final int EPOCH = 3;
+
+    private final Path snapshotFile;
+    private final Path walFile;
+    private final int shardCount;
+    private FileChannel wal;
+    // sequence number of the latest record appended, and of the latest one forced to disk
+    private long appended;
+    private volatile long synced;
+    private final Object syncLock = new Object();
+    private int sinceSnapshot;
+
+    public TrackerLog(String dir, int shardCount) throws IOException {
+        Path d = Paths.get(dir);
+        Files.createDirectories(d);
+        this.snapshotFile = d.resolve("tracker.snapshot");
+        this.walFile = d.resolve("tracker.wal");
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * restore rebuilds the rosters from the snapshot and the log, then opens the log for appending.
+     * Shards beyond shardCount, e.g. after maze.shards.perSide changed, are dropped.
+     */
+    public Roster[] restore() throws IOException, ClassNotFoundException {
+        Roster[] rosters = new Roster[shardCount];
+        for (int s = 0; s < shardCount; s++) {
+            rosters[s] = Roster.EMPTY;
+        }
+
+        long snapshotSeq = 0;
+        if (Files.exists(snapshotFile)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(snapshotFile))) {
+                Wire.readHeader(in, "tracker snapshot");
+                snapshotSeq = in.readLong();
+                int shards = Wire.readVarint(in);
+                for (int s = 0; s < shards; s++) {
+                    long epoch = in.readLong();
+                    int size = Wire.readVarint(in);
+                    Vector<Player> players = new Vector<>(size);
+                    Vector<String> names = new Vector<>(size);
+                    for (int i = 0; i < size; i++) {
+                        names.add(in.readUTF());
+                        byte[] stub = new byte[Wire.readVarint(in)];
+                        in.readFully(stub);
+                        players.add(decode(stub));
+                    }
+                    if (s < shardCount) {
+                        rosters[s] = Roster.restore(epoch, players, names);
+                    }
+                }
+            }
+        }
+        appended = snapshotSeq;
+
+        wal = FileChannel.open(walFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long end = replay(rosters, snapshotSeq);
+        if (end < wal.size()) {
+            System.out.println("tracker log: dropping " + (wal.size() - end) + " bytes of a torn record");
+            wal.truncate(end);
+        }
+        wal.position(end);
+        synced = appended;
+        return rosters;
+    }
+
+    // replay applies the records after `snapshotSeq` and returns where the intact records end
+    private long replay(Roster[] rosters, long snapshotSeq) throws IOException, ClassNotFoundException {
+        ByteBuffer head = ByteBuffer.allocate(8);
+        long pos = 0;
+        while (true) {
+            head.clear();
+            if (wal.read(head, pos) < 8) return pos;
+            head.flip();
+            int length = head.getInt();
+            int crc = head.getInt();
+            if (length <= 0 || pos + 8 + length > wal.size()) return pos;
+            ByteBuffer body = ByteBuffer.allocate(length);
+            wal.read(body, pos + 8);
+            if (checksum(body.array()) != crc) return pos;
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body.array()));
+            long seq = in.readLong();
+            int op = in.readUnsignedByte();
+            int shard = Wire.readVarint(in);
+            long epoch = in.readLong();
+            String name = in.readUTF();
+            // records up to the snapshot are in it already, e.g. after a crash halfway through compacting
+            if (seq > snapshotSeq && shard < shardCount) {
+                Roster r = rosters[shard];
+                if (op == ADD) {
+                    byte[] stub = new byte[Wire.readVarint(in)];
+                    in.readFully(stub);
+                    r = r.with(decode(stub), name);
+                } else if (op == REMOVE) {
+                    r = r.without(name);
+                }
+                rosters[shard] = r.at(epoch);
+            }
+            appended = Math.max(appended, seq);
+            pos += 8 + length;
+        }
+    }
+
+    /**
+     * append records how `before` turned into `after` in `shard`, and returns the sequence number
+     * to pass to sync. A player that registered again, with a new stub, is removed and added.
+     */
+    public long append(int shard, Roster before, Roster after) throws IOException {
+        long from = appended;
+        for (int i = 0; i < before.size(); i++) {
+            if (!kept(before, i, after)) {
+                write(REMOVE, shard, after.epoch, before.nameAt(i), null);
+            }
+        }
+        for (int i = 0; i < after.size(); i++) {
+            if (!kept(after, i, before)) {
+                write(ADD, shard, after.epoch, after.nameAt(i), after.players.get(i));
+            }
+        }
+        if (appended == from && after.epoch != before.epoch) {
+            write(EPOCH, shard, after.epoch, "", null);
+        }
+        return appended;
+    }
+
+    // kept tells whether the player at index i of `r` is in `other` too, with the same stub
+    private static boolean kept(Roster r, int i, Roster other) {
+        int j = other.indexOf(r.nameAt(i));
+        return j >= 0 && other.players.get(j).equals(r.players.get(i));
+    }
+
+    private void write(int op, int shard, long epoch, String name, Player player) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(++appended);
+        out.writeByte(op);
+        Wire.writeVarint(out, shard);
+        out.writeLong(epoch);
+        out.writeUTF(name);
+        if (player != null) {
+            byte[] stub = encode(player);
+            Wire.writeVarint(out, stub.length);
+            out.write(stub);
+        }
+        out.flush();
+
+        byte[] body = bytes.toByteArray();
+        ByteBuffer record = ByteBuffer.allocate(8 + body.length);
+        record.putInt(body.length);
+        record.putInt(checksum(body));
+        record.put(body);
+        record.flip();
+        while (record.hasRemaining()) {
+            wal.write(record);
+        }
+        sinceSnapshot++;
+    }
+
+    /**
+     * sync returns once record `seq` is on disk. Whoever forces the file covers every record
+     * appended by then, so callers arriving meanwhile mostly find their record done already.
+     * It is called outside the log's lock.
+     */
+    public void sync(long seq) throws IOException {
+        if (!Config.TRACKER_FSYNC) return;
+        synchronized (syncLock) {
+            if (synced >= seq) return;
+            long upTo;
+            synchronized (this) {
+                upTo = appended;
+            }
+            wal.force(false);
+            synced = upTo;
+        }
+    }
+
+    public boolean needsCompaction() {
+        return sinceSnapshot >= COMPACT_AFTER;
+    }
+
+    /**
+     * compact writes the rosters out whole and starts the log over.
+     * The snapshot replaces the old one in a single rename, so a crash leaves one or the other.
+     */
+    public void compact(Roster[] rosters) throws IOException {
+        Path tmp = snapshotFile.resolveSibling("tracker.snapshot.tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            Wire.writeHeader(out);
+            out.writeLong(appended);
+            Wire.writeVarint(out, rosters.length);
+            for (Roster r : rosters) {
+                out.writeLong(r.epoch);
+                Wire.writeVarint(out, r.size());
+                for (int i = 0; i < r.size(); i++) {
+                    out.writeUTF(r.nameAt(i));
+                    byte[] stub = encode(r.players.get(i));
+                    Wire.writeVarint(out, stub.length);
+                    out.write(stub);
+                }
+            }
+            out.flush();
+            ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        wal.truncate(0);
+        wal.position(0);
+        wal.force(true);
+        sinceSnapshot = 0;
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encode(Player player) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(player);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Player decode(byte[] stub) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(stub))) {
+            return (Player) in.readObject();
+        }
+    }
+}
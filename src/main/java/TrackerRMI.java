@@ -5,4 +5,13 @@ public interface TrackerRMI extends Remote {
     Bootstrap register(Player myName, String id) throws RemoteException;
     void unregister(String name) throws RemoteException;
     Bootstrap fetch() throws RemoteException;
+
+    // fetchShard returns the players of one shard
+    Bootstrap fetchShard(int shard) throws RemoteException;
+
+    // enterShard lists the player in `shard` as well and returns that shard's players
+    Bootstrap enterShard(Player player, String name, int shard) throws RemoteException;
+
+    // leaveShard drops the player from the players of `shard`
+    void leaveShard(String name, int shard) throws RemoteException;
 }
@@ -0,0 +1,40 @@
+import java.rmi.RemoteException;
+
+/**
+ * Transport carries the Player and TrackerRMI calls between nodes.
+ * RmiTransport is the default. NioTransport is picked with -Dmaze.transport=nio,
+ * LoopbackTransport, for nodes sharing one JVM, with -Dmaze.transport=loopback.
+ * Every node of a game must use the same transport.
+ */
+public abstract class Transport {
+    private static Transport current;
+
+    public static synchronized Transport get() {
+        if (current == null) {
+            switch (Config.TRANSPORT) {
+                case "nio":
+                    current = new NioTransport();
+                    break;
+                case "loopback":
+                    current = new LoopbackTransport();
+                    break;
+                default:
+                    current = new RmiTransport();
+            }
+        }
+        return current;
+    }
+
+    /**
+     * export makes a local player reachable by other nodes.
+     * The returned reference is the one to hand out, e.g. in State.playerRefs.
+     */
+    public abstract Player export(Player player, String name) throws RemoteException;
+
+    /**
+     * exportTracker makes the tracker reachable at `port` under `name`.
+     */
+    public abstract TrackerRMI exportTracker(TrackerRMI tracker, int port, String name) throws RemoteException;
+
+    public abstract TrackerRMI lookupTracker(String host, int port, String name) throws RemoteException;
+}
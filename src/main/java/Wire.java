@@ -0,0 +1,46 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+
+/**
+ * Wire holds the helpers shared by the hand-written Externalizable encodings of
+ * State, StateDelta, Bootstrap and friends.
+ * Every encoding starts with a FORMAT byte so nodes running a different encoding fail loudly
+ * instead of reading garbage.
+ */
+public class Wire {
+    public static final int FORMAT = 5;
+
+    public static void writeHeader(DataOutput out) throws IOException {
+        out.writeByte(FORMAT);
+    }
+
+    public static void readHeader(DataInput in, String what) throws IOException {
+        int format = in.readUnsignedByte();
+        if (format != FORMAT) {
+            throw new InvalidObjectException(what + " has wire format " + format + ", expected " + FORMAT);
+        }
+    }
+
+    // writeVarint writes 7 bits per byte, small non-negative numbers take a single byte
+    public static void writeVarint(DataOutput out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    public static int readVarint(DataInput in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new InvalidObjectException("malformed varint");
+    }
+}
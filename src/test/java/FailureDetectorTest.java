@@ -0,0 +1,111 @@
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FailureDetectorTest {
+    // -log10 of the normal distribution's upper tail at 1 and 3 standard deviations
+    private static final double ONE_SIGMA = -Math.log10(0.158655);
+    private static final double THREE_SIGMA = -Math.log10(0.001350);
+
+    // the detector's clock, stepped by hand
+    private final AtomicLong now = new AtomicLong(1000);
+
+    private FailureDetector detector(long firstIntervalMs) {
+        return new FailureDetector(8, firstIntervalMs, now::get);
+    }
+
+    @Test
+    public void phiIsAFairCoinAtTheMean() {
+        assertEquals(-Math.log10(0.5), FailureDetector.phi(100, 100, 10), 1e-9);
+    }
+
+    @Test
+    public void phiFollowsTheNormalTail() {
+        assertEquals(ONE_SIGMA, FailureDetector.phi(110, 100, 10), 0.01);
+        assertEquals(THREE_SIGMA, FailureDetector.phi(130, 100, 10), 0.05);
+        // early on a heartbeat is all but certain to come
+        assertEquals(-Math.log10(1 - 0.158655), FailureDetector.phi(90, 100, 10), 0.01);
+    }
+
+    @Test
+    public void phiGrowsWithSilence() {
+        double last = -1;
+        for (int elapsed = 0; elapsed <= 300; elapsed += 5) {
+            double phi = FailureDetector.phi(elapsed, 100, 10);
+            assertTrue("phi at " + elapsed + " ms", phi >= last);
+            last = phi;
+        }
+        assertTrue(last > 8);
+    }
+
+    @Test
+    public void aWiderSpreadIsSuspectedLater() {
+        assertTrue(FailureDetector.phi(150, 100, 10) > FailureDetector.phi(150, 100, 50));
+    }
+
+    @Test
+    public void learnsThePeersRate() {
+        FailureDetector detector = detector(100);
+        for (int i = 0; i < 50; i++) {
+            now.addAndGet(100);
+            detector.heartbeat("p1");
+        }
+        // steady 100 ms intervals: the spread is the floor of half the first interval
+        now.addAndGet(100);
+        assertEquals(-Math.log10(0.5), detector.phi("p1"), 1e-9);
+        now.addAndGet(50);
+        assertEquals(ONE_SIGMA, detector.phi("p1"), 0.01);
+        assertEquals(150, detector.idleMillis("p1"));
+    }
+
+    @Test
+    public void suspectsAPeerGoneQuiet() {
+        FailureDetector detector = detector(10);
+        assertFalse(detector.suspects("p1"));
+        now.addAndGet(200);
+        assertTrue(detector.suspects("p1"));
+
+        detector.heartbeat("p1");
+        assertFalse(detector.suspects("p1"));
+    }
+
+    @Test
+    public void isDownOnlyAfterAFailedCall() {
+        FailureDetector detector = detector(10);
+        detector.heartbeat("p1");
+        now.addAndGet(200);
+        assertTrue(detector.suspects("p1"));
+        assertFalse("merely slow", detector.isDown("p1"));
+
+        detector.failed("p1");
+        assertTrue(detector.isDown("p1"));
+
+        // heard from since the failure
+        now.addAndGet(1);
+        detector.heartbeat("p1");
+        assertFalse(detector.isDown("p1"));
+    }
+
+    @Test
+    public void aFailedCallAloneIsNotACrash() {
+        FailureDetector detector = detector(1000);
+        detector.heartbeat("p1");
+        now.addAndGet(1);
+        detector.failed("p1");
+        assertFalse(detector.isDown("p1"));
+    }
+
+    @Test
+    public void forgetStartsOver() {
+        FailureDetector detector = detector(10);
+        detector.heartbeat("p1");
+        now.addAndGet(200);
+        assertTrue(detector.suspects("p1"));
+        detector.forget("p1");
+        assertFalse(detector.suspects("p1"));
+    }
+}
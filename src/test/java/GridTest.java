@@ -0,0 +1,123 @@
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GridTest {
+    private static Grid whole(int n) {
+        return new Grid(n, new ShardMap(n, 1).region(0));
+    }
+
+    @Test
+    public void startsWithEveryCellFree() {
+        Grid grid = whole(5);
+        assertEquals(25, grid.freeCount());
+        for (int x = 0; x < 5; x++) {
+            for (int y = 0; y < 5; y++) {
+                assertFalse(grid.hasPlayer(x, y));
+                assertEquals(-1, grid.treasureAt(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void takenCellsLeaveTheFreeList() {
+        Grid grid = whole(4);
+        grid.placePlayer(1, 2);
+        grid.placeTreasure(3, 3, 0);
+        assertEquals(14, grid.freeCount());
+        assertTrue(grid.hasPlayer(1, 2));
+        assertEquals(0, grid.treasureAt(3, 3));
+
+        grid.removePlayer(1, 2);
+        grid.removeTreasure(3, 3, 0);
+        assertEquals(16, grid.freeCount());
+        assertFalse(grid.hasPlayer(1, 2));
+        assertEquals(-1, grid.treasureAt(3, 3));
+    }
+
+    @Test
+    public void removesOnlyWhatIsThere() {
+        Grid grid = whole(3);
+        grid.placeTreasure(0, 0, 1);
+        // another treasure's index, or no player, leaves the cell as it is
+        grid.removeTreasure(0, 0, 2);
+        grid.removePlayer(0, 0);
+        assertEquals(1, grid.treasureAt(0, 0));
+        assertEquals(8, grid.freeCount());
+    }
+
+    @Test
+    public void aPlayerTakesATreasuresCell() {
+        Grid grid = whole(3);
+        grid.placeTreasure(1, 1, 0);
+        grid.placePlayer(1, 1);
+        assertTrue(grid.hasPlayer(1, 1));
+        assertEquals(-1, grid.treasureAt(1, 1));
+        assertEquals(8, grid.freeCount());
+    }
+
+    @Test
+    public void randomFreePicksOnlyFreeCellsUntilFull() {
+        Grid grid = whole(6);
+        Random random = new Random(1);
+        Set<Integer> taken = new HashSet<>();
+        for (int i = 0; i < 36; i++) {
+            int cell = grid.randomFree(random);
+            assertTrue("cell " + cell + " picked twice", taken.add(cell));
+            grid.placePlayer(grid.xOf(cell), grid.yOf(cell));
+            assertEquals(36 - taken.size(), grid.freeCount());
+        }
+        assertEquals(-1, grid.randomFree(random));
+
+        // a freed cell is the only one left to pick
+        grid.removePlayer(2, 4);
+        int cell = grid.randomFree(random);
+        assertEquals(2, grid.xOf(cell));
+        assertEquals(4, grid.yOf(cell));
+    }
+
+    @Test
+    public void cellsOutsideTheRegionAreNeverFree() {
+        ShardMap shards = new ShardMap(8, 2);
+        ShardMap.Region region = shards.region(3);
+        Grid grid = new Grid(8, region);
+        assertEquals(16, grid.freeCount());
+        assertFalse(grid.inBounds(0, 0));
+        assertTrue(grid.inBounds(region.x0, region.y0));
+
+        Random random = new Random(2);
+        for (int i = 0; i < 100; i++) {
+            int cell = grid.randomFree(random);
+            assertTrue(region.contains(grid.xOf(cell), grid.yOf(cell)));
+        }
+    }
+
+    @Test
+    public void sortFreeMakesPicksIndependentOfHistory() {
+        Grid a = whole(5);
+        Grid b = whole(5);
+        // the same cells taken and freed, in a different order
+        a.placePlayer(0, 0);
+        a.placePlayer(4, 4);
+        a.placePlayer(2, 2);
+        a.removePlayer(0, 0);
+        b.placePlayer(2, 2);
+        b.placePlayer(0, 0);
+        b.removePlayer(0, 0);
+        b.placePlayer(4, 4);
+
+        a.sortFree();
+        b.sortFree();
+        Random ra = new Random(3);
+        Random rb = new Random(3);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(a.randomFree(ra), b.randomFree(rb));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JournalTest {
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("journal");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.toFile().listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.toFile().delete();
+    }
+
+    private static State game() {
+        State state = new State(null, "p0", 10, 3);
+        state.addPlayer(null, "p1", 0);
+        state.addPlayer(null, "p2", 0);
+        state.takeDelta();
+        return state;
+    }
+
+    // step moves the players until one of them gets somewhere, and returns the change
+    private static StateDelta step(State state, int i) {
+        for (int tries = 0; ; tries++) {
+            state.move(Move.values()[(i + tries) % 4], state.nameAt((i + tries) % state.playerCount()));
+            StateDelta delta = state.takeDelta();
+            if (delta != null) return delta;
+        }
+    }
+
+    private void checkpoint(String name, State state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            state.writeExternal(out);
+        }
+        Files.write(dir.resolve("shard0-" + name + ".checkpoint"), bytes.toByteArray());
+    }
+
+    // journal writes the records as Journal does: length, checksum, then the delta
+    private byte[] journal(String name, List<StateDelta> deltas) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (StateDelta delta : deltas) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                delta.writeExternal(out);
+            }
+            byte[] body = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, body.length);
+            ByteBuffer head = ByteBuffer.allocate(8);
+            head.putInt(body.length);
+            head.putInt((int) crc.getValue());
+            records.write(head.array());
+            records.write(body);
+        }
+        byte[] journal = records.toByteArray();
+        Files.write(dir.resolve("shard0-" + name + ".journal"), journal);
+        return journal;
+    }
+
+    private static void assertSameGame(State expected, State actual) {
+        assertEquals(expected.count, actual.count);
+        assertEquals(expected.getEpoch(), actual.getEpoch());
+        assertEquals(expected.playerCount(), actual.playerCount());
+        for (int i = 0; i < expected.playerCount(); i++) {
+            assertEquals(expected.nameAt(i), actual.nameAt(i));
+            assertEquals(expected.xAt(i), actual.xAt(i));
+            assertEquals(expected.yAt(i), actual.yAt(i));
+            assertEquals(expected.scoreAt(i), actual.scoreAt(i));
+        }
+        for (int j = 0; j < expected.treasureCount(); j++) {
+            assertEquals(expected.treasureXAt(j), actual.treasureXAt(j));
+            assertEquals(expected.treasureYAt(j), actual.treasureYAt(j));
+        }
+    }
+
+    @Test
+    public void replaysTheJournalOnTopOfTheCheckpoint() throws Exception {
+        State live = game();
+        checkpoint("p0", live);
+        List<StateDelta> deltas = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            deltas.add(step(live, i));
+        }
+        journal("p0", deltas);
+
+        assertSameGame(live, Journal.recover(dir.toString(), 0));
+    }
+
+    @Test
+    public void skipsRecordsAlreadyInTheCheckpoint() throws Exception {
+        State live = game();
+        List<StateDelta> deltas = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            deltas.add(step(live, i));
+        }
+        // the checkpoint was written after the first five, the journal not yet started over
+        checkpoint("p0", live);
+        for (int i = 5; i < 10; i++) {
+            deltas.add(step(live, i));
+        }
+        journal("p0", deltas);
+
+        assertSameGame(live, Journal.recover(dir.toString(), 0));
+    }
+
+    @Test
+    public void stopsAtATornRecord() throws Exception {
+        State live = game();
+        checkpoint("p0", live);
+        List<StateDelta> deltas = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            deltas.add(step(live, i));
+        }
+        byte[] journal = journal("p0", deltas);
+        int lastVersion = deltas.get(deltas.size() - 1).count;
+        // the writer died halfway through the last record
+        Files.write(dir.resolve("shard0-p0.journal"), Arrays.copyOf(journal, journal.length - 3));
+
+        State recovered = Journal.recover(dir.toString(), 0);
+        assertEquals(lastVersion - 1, recovered.count);
+    }
+
+    @Test
+    public void stopsAtARecordOfAnotherGame() throws Exception {
+        State live = game();
+        checkpoint("p0", live);
+        State other = game();
+        // same versions, different game
+        journal("p0", Arrays.asList(step(other, 0), step(other, 1)));
+
+        assertEquals(live.count, Journal.recover(dir.toString(), 0).count);
+    }
+
+    @Test
+    public void picksTheFilesThatGetFurthest() throws Exception {
+        State live = game();
+        checkpoint("p0", live);
+        List<StateDelta> deltas = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            deltas.add(step(live, i));
+        }
+        journal("p0", deltas);
+
+        // p1 became primary later and journaled on from there
+        for (int i = 3; i < 8; i++) {
+            step(live, i);
+        }
+        checkpoint("p1", live);
+
+        assertSameGame(live, Journal.recover(dir.toString(), 0));
+    }
+
+    @Test
+    public void recoversNothingWithoutACheckpoint() {
+        assertNull(Journal.recover(dir.toString(), 0));
+    }
+}
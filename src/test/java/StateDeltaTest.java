@@ -0,0 +1,93 @@
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StateDeltaTest {
+    private static byte[] encode(StateDelta delta) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            delta.writeExternal(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static StateDelta decode(byte[] bytes) throws IOException, ClassNotFoundException {
+        StateDelta delta = new StateDelta();
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            delta.readExternal(in);
+        }
+        return delta;
+    }
+
+    @Test
+    public void roundTripsEveryKind() throws Exception {
+        StateDelta delta = new StateDelta(3, 42L, 7);
+        delta.add(StateDelta.Kind.Moved, "a", 1, 2, 0, null);
+        delta.add(StateDelta.Kind.Scored, "a", 0, 0, 5, null);
+        delta.add(StateDelta.Kind.Treasure, null, 300, 4, 2, null);
+        delta.add(StateDelta.Kind.Joined, "b", 6, 7, 8, null);
+        delta.add(StateDelta.Kind.Left, "c", 0, 0, 0, null);
+        delta.count = 12;
+
+        StateDelta read = decode(encode(delta));
+        assertEquals(3, read.shard);
+        assertEquals(42L, read.epoch);
+        assertEquals(7, read.base);
+        assertEquals(12, read.count);
+        assertEquals(delta.size(), read.size());
+        for (int i = 0; i < delta.size(); i++) {
+            assertEquals(delta.kindAt(i), read.kindAt(i));
+            assertEquals(delta.nameAt(i), read.nameAt(i));
+            assertEquals(delta.xAt(i), read.xAt(i));
+            assertEquals(delta.yAt(i), read.yAt(i));
+            assertEquals(delta.valueAt(i), read.valueAt(i));
+            assertNull(read.refAt(i));
+        }
+    }
+
+    @Test
+    public void growsPastItsFirstArrays() {
+        StateDelta merged = new StateDelta(0, 0, 0);
+        StateDelta more = new StateDelta(0, 0, 0);
+        for (int i = 0; i < 20; i++) {
+            merged.add(StateDelta.Kind.Moved, "a", i, 0, 0, null);
+            more.add(StateDelta.Kind.Scored, "b", 0, 0, i, null);
+        }
+        merged.addAll(more);
+        assertEquals(40, merged.size());
+        assertEquals(19, merged.xAt(19));
+        assertEquals(StateDelta.Kind.Scored, merged.kindAt(20));
+        assertEquals(19, merged.valueAt(39));
+    }
+
+    @Test(expected = InvalidObjectException.class)
+    public void rejectsAnUnknownKind() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            Wire.writeHeader(out);
+            Wire.writeVarint(out, 0);
+            out.writeLong(0);
+            Wire.writeVarint(out, 0);
+            Wire.writeVarint(out, 1);
+            Wire.writeVarint(out, 1);
+            out.writeByte(StateDelta.Kind.values().length);
+        }
+        decode(bytes.toByteArray());
+    }
+
+    @Test(expected = InvalidObjectException.class)
+    public void rejectsAnotherFormat() throws Exception {
+        byte[] bytes = encode(new StateDelta(0, 0, 0));
+        // the format byte follows the stream header and the block data header
+        bytes[6] = (byte) (Wire.FORMAT + 1);
+        decode(bytes);
+    }
+}
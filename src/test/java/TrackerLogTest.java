@@ -0,0 +1,204 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TrackerLogTest {
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("tracker-log");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.toFile().listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.toFile().delete();
+    }
+
+    // Named stands in for a player's stub: it only serializes and compares by name
+    private static class Named implements InvocationHandler, Serializable {
+        private static final long serialVersionUID = 1L;
+        final String name;
+
+        Named(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "equals":
+                    return args[0] != null && Proxy.isProxyClass(args[0].getClass())
+                            && Proxy.getInvocationHandler(args[0]) instanceof Named
+                            && name.equals(((Named) Proxy.getInvocationHandler(args[0])).name);
+                case "hashCode":
+                    return name.hashCode();
+                case "toString":
+                    return name;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+
+    private static Player ref(String name) {
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class}, new Named(name));
+    }
+
+    // join adds `name` to `shard` and logs it
+    private static void join(TrackerLog log, Roster[] rosters, int shard, String name) throws IOException {
+        Roster after = rosters[shard].with(ref(name), name);
+        log.append(shard, rosters[shard], after);
+        rosters[shard] = after;
+    }
+
+    private static void leave(TrackerLog log, Roster[] rosters, int shard, String name) throws IOException {
+        Roster after = rosters[shard].without(name);
+        log.append(shard, rosters[shard], after);
+        rosters[shard] = after;
+    }
+
+    @Test
+    public void restoresWhatWasLogged() throws Exception {
+        TrackerLog log = new TrackerLog(dir.toString(), 2);
+        Roster[] rosters = log.restore();
+        join(log, rosters, 0, "a");
+        join(log, rosters, 1, "b");
+        join(log, rosters, 0, "c");
+        leave(log, rosters, 0, "a");
+
+        Roster[] restored = new TrackerLog(dir.toString(), 2).restore();
+        assertEquals(1, restored[0].size());
+        assertEquals("c", restored[0].nameAt(0));
+        assertEquals(1, restored[1].size());
+        assertEquals("b", restored[1].nameAt(0));
+        assertEquals(ref("b"), restored[1].players.get(0));
+    }
+
+    @Test
+    public void dropsATornRecordAndWhatFollows() throws Exception {
+        TrackerLog log = new TrackerLog(dir.toString(), 1);
+        Roster[] rosters = log.restore();
+        join(log, rosters, 0, "a");
+        join(log, rosters, 0, "b");
+
+        // the tracker died halfway through writing b's record
+        File wal = dir.resolve("tracker.wal").toFile();
+        long intact;
+        try (RandomAccessFile f = new RandomAccessFile(wal, "rw")) {
+            f.setLength(f.length() - 5);
+            intact = firstRecordEnd(f);
+        }
+
+        TrackerLog reopened = new TrackerLog(dir.toString(), 1);
+        Roster[] restored = reopened.restore();
+        assertEquals(1, restored[0].size());
+        assertEquals("a", restored[0].nameAt(0));
+        assertEquals("the torn record is cut off", intact, wal.length());
+
+        // appends carry on after the intact records
+        join(reopened, restored, 0, "c");
+        Roster[] again = new TrackerLog(dir.toString(), 1).restore();
+        assertEquals(2, again[0].size());
+        assertTrue(again[0].contains("a"));
+        assertTrue(again[0].contains("c"));
+        assertFalse(again[0].contains("b"));
+    }
+
+    @Test
+    public void dropsARecordFailingItsChecksum() throws Exception {
+        TrackerLog log = new TrackerLog(dir.toString(), 1);
+        Roster[] rosters = log.restore();
+        join(log, rosters, 0, "a");
+        join(log, rosters, 0, "b");
+
+        File wal = dir.resolve("tracker.wal").toFile();
+        try (RandomAccessFile f = new RandomAccessFile(wal, "rw")) {
+            // flip the last byte of b's record
+            f.seek(f.length() - 1);
+            int last = f.read();
+            f.seek(f.length() - 1);
+            f.write(last ^ 0xFF);
+        }
+
+        Roster[] restored = new TrackerLog(dir.toString(), 1).restore();
+        assertEquals(1, restored[0].size());
+        assertEquals("a", restored[0].nameAt(0));
+    }
+
+    @Test
+    public void replaysTheLogOnTopOfTheSnapshot() throws Exception {
+        TrackerLog log = new TrackerLog(dir.toString(), 1);
+        Roster[] rosters = log.restore();
+        join(log, rosters, 0, "a");
+        join(log, rosters, 0, "b");
+        log.compact(rosters);
+        leave(log, rosters, 0, "a");
+        join(log, rosters, 0, "c");
+
+        Roster[] restored = new TrackerLog(dir.toString(), 1).restore();
+        assertEquals(2, restored[0].size());
+        assertEquals("b", restored[0].nameAt(0));
+        assertEquals("c", restored[0].nameAt(1));
+        assertEquals(rosters[0].epoch, restored[0].epoch);
+    }
+
+    @Test
+    public void restoresAStubRegisteredAgainUnderTheSameName() throws Exception {
+        TrackerLog log = new TrackerLog(dir.toString(), 1);
+        Roster[] rosters = log.restore();
+        join(log, rosters, 0, "a");
+        join(log, rosters, 0, "b");
+        // a restarted, with a new stub, registers again as the tracker does it
+        Roster after = rosters[0].without("a").with(ref("a, restarted"), "a");
+        log.append(0, rosters[0], after);
+        rosters[0] = after;
+
+        Roster[] restored = new TrackerLog(dir.toString(), 1).restore();
+        assertEquals(2, restored[0].size());
+        assertEquals("a", restored[0].nameAt(1));
+        assertEquals(ref("a, restarted"), restored[0].players.get(1));
+        assertEquals(rosters[0].epoch, restored[0].epoch);
+    }
+
+    @Test
+    public void restoresAnEpochThatMovedWithoutAChange() throws Exception {
+        TrackerLog log = new TrackerLog(dir.toString(), 1);
+        Roster[] rosters = log.restore();
+        join(log, rosters, 0, "a");
+        // a registers again with the same stub
+        Roster after = rosters[0].without("a").with(ref("a"), "a");
+        log.append(0, rosters[0], after);
+        rosters[0] = after;
+
+        Roster[] restored = new TrackerLog(dir.toString(), 1).restore();
+        assertEquals(1, restored[0].size());
+        assertEquals(rosters[0].epoch, restored[0].epoch);
+    }
+
+    // firstRecordEnd returns where the first record of the log ends
+    private static long firstRecordEnd(RandomAccessFile f) throws IOException {
+        f.seek(0);
+        return 8 + f.readInt();
+    }
+}
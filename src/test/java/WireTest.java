@@ -0,0 +1,72 @@
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+
+import static org.junit.Assert.assertEquals;
+
+public class WireTest {
+    private static byte[] varint(int v) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Wire.writeVarint(new DataOutputStream(bytes), v);
+        return bytes.toByteArray();
+    }
+
+    private static int read(byte[] bytes) throws IOException {
+        return Wire.readVarint(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        int[] values = {0, 1, 63, 127, 128, 255, 300, 16383, 16384, 2097151, 2097152, 1 << 28, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        for (int v : values) {
+            assertEquals(v, read(varint(v)));
+        }
+    }
+
+    @Test
+    public void takesSevenBitsPerByte() throws IOException {
+        assertEquals(1, varint(0).length);
+        assertEquals(1, varint(127).length);
+        assertEquals(2, varint(128).length);
+        assertEquals(2, varint(16383).length);
+        assertEquals(3, varint(16384).length);
+        assertEquals(5, varint(Integer.MAX_VALUE).length);
+        // negative numbers are not zigzagged, they take the most
+        assertEquals(5, varint(-1).length);
+    }
+
+    @Test
+    public void sequencesReadBack() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int v = 0; v < 100000; v += 97) {
+            Wire.writeVarint(out, v);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int v = 0; v < 100000; v += 97) {
+            assertEquals(v, Wire.readVarint(in));
+        }
+        assertEquals(0, in.available());
+    }
+
+    @Test(expected = InvalidObjectException.class)
+    public void rejectsAVarintThatDoesNotEnd() throws IOException {
+        read(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01});
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsAVarintCutShort() throws IOException {
+        read(new byte[]{(byte) 0x80});
+    }
+
+    @Test(expected = InvalidObjectException.class)
+    public void rejectsAnotherFormat() throws IOException {
+        Wire.readHeader(new DataInputStream(new ByteArrayInputStream(new byte[]{(byte) (Wire.FORMAT + 1)})), "test");
+    }
+}